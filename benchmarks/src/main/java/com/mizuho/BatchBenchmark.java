@@ -0,0 +1,86 @@
+package com.mizuho;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Throughput of OrderBook.applyBatch() against applying the same commands one at a time.
+// Each invocation applies COMMANDS commands in bursts of `batchSize` - each burst half cancels of
+// the oldest resting orders and half adds of new orders, spread over `levels` bid levels, so the
+// depth of the book stays the same throughout the run. Scores are in commands per microsecond.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+    private static final char BID = 'B';
+    private static final double BEST_BID = 100.0;
+    private static final double TICK = 0.01;
+    private static final int RESTING_ORDERS = 10000;
+    private static final int COMMANDS = 256;
+
+    @Param({"16", "256"})
+    public int batchSize;
+
+    @Param({"1", "10"})
+    public int levels;
+
+    private OrderBook orderBook;
+    private OrderCommand[] commands;
+    private long[] restingIds; // a ring of the resting order ids, oldest at `oldest`
+    private int oldest;
+    private long nextId;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        orderBook = new OrderBook(TICK);
+        commands = new OrderCommand[batchSize];
+        for (int i = 0; i < batchSize; i++)
+            commands[i] = new OrderCommand();
+        restingIds = new long[RESTING_ORDERS];
+        oldest = 0;
+        nextId = 1;
+        for (int i = 0; i < restingIds.length; i++) {
+            restingIds[i] = nextId++;
+            orderBook.addOrder(new Order(restingIds[i], priceFor(restingIds[i]), BID, 100));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public int applyBatch() throws Exception {
+        int applied = 0;
+        for (int burst = 0; burst < COMMANDS / batchSize; burst++) {
+            nextBurst();
+            applied += orderBook.applyBatch(commands);
+        }
+        return applied;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public int oneAtATime() throws Exception {
+        for (int burst = 0; burst < COMMANDS / batchSize; burst++) {
+            nextBurst();
+            for (OrderCommand command : commands)
+                command.applyTo(orderBook);
+        }
+        return COMMANDS;
+    }
+
+    private void nextBurst() {
+        for (int i = 0; i < batchSize; i += 2) {
+            long id = nextId++;
+            commands[i].setCancel(restingIds[oldest]);
+            commands[i + 1].setAdd(id, priceFor(id), BID, 100);
+            restingIds[oldest] = id;
+            oldest = (oldest + 1) % restingIds.length;
+        }
+    }
+
+    private double priceFor(long id) {
+        return BEST_BID - (id % levels) * TICK;
+    }
+}
@@ -0,0 +1,84 @@
+package com.mizuho;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Several threads updating one shared OrderBook, to measure how the fine grained locking
+// scales. Each thread works on its own orders, spread over the same `levels` bid levels, so
+// threads contend on the level locks, the ladder and the id index but never on an order.
+// Use -t to set the number of threads (e.g. -t 1, -t 2, -t 4) and -prof gc for allocation rates.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ContendedOrderBookBenchmark {
+    private static final char BID = 'B';
+    private static final double BEST_BID = 100.0;
+    private static final double TICK = 0.01;
+    private static final long IDS_PER_THREAD = 1L << 40;
+
+    @Param({"1", "10", "100"})
+    public int levels;
+
+    @Param({"100"})
+    public int ordersPerThread;
+
+    private OrderBook orderBook;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        orderBook = new OrderBook(TICK);
+        threadCount.set(0);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadOrders {
+        private long[] restingIds;
+        private int oldest;
+        private long nextId;
+        private int nextLevel;
+        private long nextSize;
+
+        @Setup(Level.Iteration)
+        public void setUp(ContendedOrderBookBenchmark benchmark) throws Exception {
+            nextId = benchmark.threadCount.getAndIncrement() * IDS_PER_THREAD + 1;
+            restingIds = new long[benchmark.ordersPerThread];
+            oldest = 0;
+            for (int i = 0; i < restingIds.length; i++)
+                restingIds[i] = addNextOrder(benchmark);
+        }
+
+        private long addNextOrder(ContendedOrderBookBenchmark benchmark) throws Exception {
+            long id = nextId++;
+            nextLevel = (nextLevel + 1) % benchmark.levels;
+            benchmark.orderBook.addOrder(new Order(id, BEST_BID - nextLevel * TICK, BID, 100));
+            return id;
+        }
+    }
+
+    @Benchmark
+    public void addOrderAndRemoveOrder(ThreadOrders orders) throws Exception {
+        orderBook.removeOrder(orders.restingIds[orders.oldest]);
+        orders.restingIds[orders.oldest] = orders.addNextOrder(this);
+        orders.oldest = (orders.oldest + 1) % orders.restingIds.length;
+    }
+
+    @Benchmark
+    public void modifyOrderSize(ThreadOrders orders) throws Exception {
+        orders.nextSize = orders.nextSize == 100 ? 200 : 100;
+        orderBook.modifyOrderSize(orders.restingIds[orders.oldest], orders.nextSize);
+        orders.oldest = (orders.oldest + 1) % orders.restingIds.length;
+    }
+
+    @Benchmark
+    public long getSizeForSideAndLevel(ThreadOrders orders) throws Exception {
+        orders.nextLevel = (orders.nextLevel + 1) % levels;
+        return orderBook.getSizeForSideAndLevel(BID, orders.nextLevel + 1);
+    }
+}
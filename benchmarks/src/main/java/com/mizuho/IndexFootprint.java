@@ -0,0 +1,55 @@
+package com.mizuho;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+
+// Reports the retained heap of the order id index for a given number of resting orders, for
+// ConcurrentHashMap<Long, ...> against ConcurrentLongHashIndex. The values are a shared
+// object, so only the cost of the index itself is measured.
+//
+// java -cp benchmarks/target/benchmarks.jar com.mizuho.IndexFootprint [orders]
+public class IndexFootprint {
+    private static final Object VALUE = new Object();
+
+    public static void main(String[] args) {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        report("ConcurrentHashMap<Long, Object>", orders, n -> {
+            ConcurrentHashMap<Long, Object> map = new ConcurrentHashMap<>();
+            for (long id = 0; id < n; id++)
+                map.put(id, VALUE);
+            return map;
+        });
+
+        report("ConcurrentLongHashIndex<Object>", orders, n -> {
+            ConcurrentLongHashIndex<Object> index = new ConcurrentLongHashIndex<>();
+            for (long id = 0; id < n; id++)
+                index.put(id, VALUE);
+            return index;
+        });
+    }
+
+    private static void report(String name, int orders, LongFunction<Object> build) {
+        long before = usedHeap();
+        Object index = build.apply(orders);
+        long after = usedHeap();
+        System.out.printf("%-35s %,d orders: %,d bytes (%.1f bytes per order)%n",
+                name, orders, after - before, (after - before) / (double)orders);
+        if ( index.hashCode() == 42 ) // keep the index reachable until measured
+            System.out.println();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,73 @@
+package com.mizuho;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+// The cost of the OrderBook's debug logging when debug is off (the root level is info), which
+// is the production case. Run with -prof gc: gc.alloc.rate.norm should be 0 B/op for all but
+// capturingLambda, the style OrderBook used to log with.
+//
+// modifyOrderSize and getSizeForSideAndLevel go through the whole OrderBook call, including its
+// logging, and neither allocates anything else, so they should also show 0 B/op.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:-DoEscapeAnalysis") // so that a lambda or boxed value is not optimised away by luck
+public class LoggingBenchmark {
+    private static final Logger log = LogManager.getLogger(LoggingBenchmark.class);
+
+    private static final char BID = 'B';
+    private static final int ORDERS = 1000;
+
+    private OrderBook orderBook;
+    private long id;
+    private long size = 100;
+
+    @Setup
+    public void setUp() throws Exception {
+        if ( log.isDebugEnabled() )
+            throw new IllegalStateException("Debug logging is on - this benchmark measures it switched off");
+
+        orderBook = new OrderBook();
+        for (int i = 0; i < ORDERS; i++)
+            orderBook.addOrder(new Order(i, 100.0, BID, 100));
+    }
+
+    @Benchmark
+    public void capturingLambda() {
+        long id = nextId();
+        long size = this.size;
+        log.debug(() -> "modifyOrderSize() called for order id:" + id + " and size: " + size);
+    }
+
+    @Benchmark
+    public void guardedParameterized() {
+        long id = nextId();
+        long size = this.size;
+        if ( log.isDebugEnabled() )
+            log.debug("modifyOrderSize() called for order id:{} and size: {}", box(id), box(size));
+    }
+
+    @Benchmark
+    public void modifyOrderSize() throws Exception {
+        size = size == 100 ? 200 : 100;
+        orderBook.modifyOrderSize(nextId(), size);
+    }
+
+    @Benchmark
+    public long getSizeForSideAndLevel() throws Exception {
+        return orderBook.getSizeForSideAndLevel(BID, 1);
+    }
+
+    private long nextId() {
+        id = id == ORDERS - 1 ? 0 : id + 1;
+        return id;
+    }
+}
@@ -0,0 +1,104 @@
+package com.mizuho;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Single threaded latency of each OrderBook operation against a bid side of `levels` price
+// levels with `ordersPerLevel` orders resting on each. Run with -prof gc for allocation rates.
+//
+// addOrder and removeOrder are measured as a pair - each invocation adds a new order and
+// cancels the oldest - so that the depth of the book stays the same throughout the run.
+//
+// With orderEvents=true an OrderEventListener is registered, to show the cost of the L3 feed.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookBenchmark {
+    private static final char BID = 'B';
+    private static final double BEST_BID = 100.0;
+    private static final double TICK = 0.01;
+
+    @Param({"1", "10", "100"})
+    public int levels;
+
+    @Param({"10", "1000"})
+    public int ordersPerLevel;
+
+    @Param({"false", "true"})
+    public boolean orderEvents;
+
+    private OrderBook orderBook;
+    private long[] restingIds; // a ring of the resting order ids, oldest at `oldest`
+    private int oldest;
+    private long nextId;
+    private int nextLevel;
+    private long nextSize;
+    private long visitedSize;
+    private long eventCount;
+    private final OrderVisitor visitor = (id, price, side, size) -> visitedSize += size;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        orderBook = new OrderBook(TICK);
+        if ( orderEvents )
+            orderBook.addOrderEventListener((events, count) -> eventCount += count);
+        restingIds = new long[levels * ordersPerLevel];
+        oldest = 0;
+        nextId = 1;
+        nextLevel = 0;
+        for (int i = 0; i < restingIds.length; i++)
+            restingIds[i] = addNextOrder();
+    }
+
+    @Benchmark
+    public void addOrderAndRemoveOrder() throws Exception {
+        orderBook.removeOrder(restingIds[oldest]);
+        restingIds[oldest] = addNextOrder();
+        oldest = (oldest + 1) % restingIds.length;
+    }
+
+    @Benchmark
+    public void modifyOrderSize() throws Exception {
+        nextSize = nextSize == 100 ? 200 : 100;
+        orderBook.modifyOrderSize(restingIds[oldest], nextSize);
+        oldest = (oldest + 1) % restingIds.length;
+    }
+
+    @Benchmark
+    public double getPriceForSideAndLevel() throws Exception {
+        nextLevel = (nextLevel + 1) % levels;
+        return orderBook.getPriceForSideAndLevel(BID, nextLevel + 1);
+    }
+
+    @Benchmark
+    public long getSizeForSideAndLevel() throws Exception {
+        nextLevel = (nextLevel + 1) % levels;
+        return orderBook.getSizeForSideAndLevel(BID, nextLevel + 1);
+    }
+
+    @Benchmark
+    public List<Order> getOrdersForSide() throws Exception {
+        return orderBook.getOrdersForSide(BID);
+    }
+
+    // The allocation-free alternative to getOrdersForSide()
+    @Benchmark
+    public long forEachOrder() throws Exception {
+        visitedSize = 0;
+        orderBook.forEachOrder(BID, visitor);
+        return visitedSize;
+    }
+
+    // Orders go to each level in turn, so removing the oldest never empties a level.
+    private long addNextOrder() throws Exception {
+        long id = nextId++;
+        nextLevel = (nextLevel + 1) % levels;
+        orderBook.addOrder(new Order(id, BEST_BID - nextLevel * TICK, BID, 100));
+        return id;
+    }
+}
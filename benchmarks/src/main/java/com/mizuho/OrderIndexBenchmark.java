@@ -0,0 +1,80 @@
+package com.mizuho;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Compares the order id index used by OrderBook (ConcurrentLongHashIndex) with the
+// ConcurrentHashMap<Long, ...> it replaced. Run with -prof gc to see the allocation per op.
+// The footprint comparison is in IndexFootprint.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderIndexBenchmark {
+    private static final Object VALUE = new Object();
+
+    @Param({"10000", "1000000"})
+    public int restingOrders;
+
+    private ConcurrentHashMap<Long, Object> concurrentHashMap;
+    private ConcurrentLongHashIndex<Object> concurrentIndex;
+    private LongHashIndex<Object> index;
+
+    private long nextId;
+    private long oldestId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        concurrentHashMap = new ConcurrentHashMap<>();
+        concurrentIndex = new ConcurrentLongHashIndex<>();
+        index = new LongHashIndex<>();
+        for (long id = 0; id < restingOrders; id++) {
+            concurrentHashMap.put(id, VALUE);
+            concurrentIndex.put(id, VALUE);
+            index.put(id, VALUE);
+        }
+        nextId = restingOrders;
+        oldestId = 0;
+    }
+
+    // A lookup of a resting order, as done by removeOrder() and modifyOrderSize()
+
+    @Benchmark
+    public Object getConcurrentHashMap() {
+        return concurrentHashMap.get(nextId++ % restingOrders);
+    }
+
+    @Benchmark
+    public Object getConcurrentLongHashIndex() {
+        return concurrentIndex.get(nextId++ % restingOrders);
+    }
+
+    @Benchmark
+    public Object getLongHashIndex() {
+        return index.get(nextId++ % restingOrders);
+    }
+
+    // An add of a new order plus a cancel of the oldest one, keeping the index at a steady size
+
+    @Benchmark
+    public Object addAndCancelConcurrentHashMap() {
+        concurrentHashMap.put(nextId++, VALUE);
+        return concurrentHashMap.remove(oldestId++);
+    }
+
+    @Benchmark
+    public Object addAndCancelConcurrentLongHashIndex() {
+        concurrentIndex.put(nextId++, VALUE);
+        return concurrentIndex.remove(oldestId++);
+    }
+
+    @Benchmark
+    public Object addAndCancelLongHashIndex() {
+        index.put(nextId++, VALUE);
+        return index.remove(oldestId++);
+    }
+}
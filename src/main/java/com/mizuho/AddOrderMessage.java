@@ -0,0 +1,75 @@
+package com.mizuho;
+
+import java.nio.ByteBuffer;
+
+// An add of an order (see MessageFlyweight):
+//   id(8) priceTicks(8) size(8) owner(8) side(1)
+// The price is a whole number of the instrument's ticks (see TickSize), so it is exact on the
+// wire and needs no conversion when it is applied.
+public class AddOrderMessage extends MessageFlyweight {
+    public static final int TEMPLATE_ID = 1;
+    public static final int BLOCK_LENGTH = 33;
+
+    private static final int ID_OFFSET = 0;
+    private static final int PRICE_TICKS_OFFSET = 8;
+    private static final int SIZE_OFFSET = 16;
+    private static final int OWNER_OFFSET = 24;
+    private static final int SIDE_OFFSET = 32;
+
+    // Wraps the body of a message whose header is at offset - MessageHeader.ENCODED_LENGTH.
+    public AddOrderMessage wrap(ByteBuffer buffer, int offset) {
+        wrapBuffer(buffer, offset);
+        return this;
+    }
+
+    // Writes the header at offset and wraps the body after it.
+    public AddOrderMessage wrapAndApplyHeader(ByteBuffer buffer, int offset, MessageHeader header) {
+        header.wrap(buffer, offset).apply(BLOCK_LENGTH, TEMPLATE_ID);
+        return wrap(buffer, offset + MessageHeader.ENCODED_LENGTH);
+    }
+
+    public long id() {
+        return buffer.getLong(offset + ID_OFFSET);
+    }
+
+    public AddOrderMessage id(long id) {
+        buffer.putLong(offset + ID_OFFSET, id);
+        return this;
+    }
+
+    public long priceTicks() {
+        return buffer.getLong(offset + PRICE_TICKS_OFFSET);
+    }
+
+    public AddOrderMessage priceTicks(long priceTicks) {
+        buffer.putLong(offset + PRICE_TICKS_OFFSET, priceTicks);
+        return this;
+    }
+
+    public long size() {
+        return buffer.getLong(offset + SIZE_OFFSET);
+    }
+
+    public AddOrderMessage size(long size) {
+        buffer.putLong(offset + SIZE_OFFSET, size);
+        return this;
+    }
+
+    public long owner() {
+        return buffer.getLong(offset + OWNER_OFFSET);
+    }
+
+    public AddOrderMessage owner(long owner) {
+        buffer.putLong(offset + OWNER_OFFSET, owner);
+        return this;
+    }
+
+    public char side() {
+        return (char)buffer.get(offset + SIDE_OFFSET);
+    }
+
+    public AddOrderMessage side(char side) {
+        buffer.put(offset + SIDE_OFFSET, (byte)side);
+        return this;
+    }
+}
@@ -0,0 +1,130 @@
+package com.mizuho;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Point-in-time binary snapshots of an OrderBook, so that recovery is "load the latest snapshot
+// and replay the journal from the position it was taken at" rather than replaying a whole day.
+//
+// File layout (little endian):
+//   MAGIC(4) VERSION(4) tickSize(8) journalPosition(8)
+//   then for the bid side and then the offer side, best price first:
+//     levelCount(4), and per level: priceTicks(8) orderCount(4), then id(8) size(8) owner(8) per order in time priority
+// The id index is not written - it is rebuilt from the orders when the snapshot is loaded.
+//
+// A snapshot is taken in two steps. capture() copies the levels into memory, in the file's
+// layout, holding each level's lock only while it is copied, so writers are held up for no
+// longer than it takes to copy one level. writeTo() then writes the file and forces it to disk,
+// without touching the book. The copy is only consistent across levels (and with the journal
+// position) if no writes are applied while it is taken - SingleWriterOrderBook.snapshot()
+// captures on the writer thread between commands for exactly that reason, and leaves the file
+// I/O to another thread.
+public class BookSnapshot {
+    static final int MAGIC = 0x4D5A5331; // "MZS1"
+    static final int VERSION = 2;
+
+    private static final int INITIAL_SIZE = 1 << 16;
+    private static final char[] SIDES = {'B', 'O'};
+
+    private final ByteBuffer image; // the whole file, ready to write
+
+    private BookSnapshot(ByteBuffer image) {
+        this.image = image;
+    }
+
+    // Copies the book into a new snapshot in memory. journalPosition is the
+    // CommandJournal.getPosition() that the snapshot is consistent with.
+    public static BookSnapshot capture(OrderBook book, long journalPosition) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(INITIAL_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putDouble(book.getTickSize()).putLong(journalPosition);
+
+        for (char side : SIDES) {
+            PriceLevel[] levels = book.getQueueFromSide(side).getLevels();
+            buffer = ensureSpace(buffer, 4);
+            buffer.putInt(levels.length);
+
+            for (PriceLevel level : levels) {
+                // A level emptied since we took the array is written with no orders. The price is
+                // read under the lock too, as a pooled level may have been reused for another.
+                synchronized (level) {
+                    int orderCount = level.getOrderCount();
+                    buffer = ensureSpace(buffer, 12 + 24 * orderCount);
+                    buffer.putLong(level.getPriceTicks()).putInt(orderCount);
+                    for (OrderHolder o = level.getHead(); o != null; o = o.next)
+                        buffer.putLong(o.getId()).putLong(o.getSize()).putLong(o.getOwner());
+                }
+            }
+        }
+        buffer.flip();
+        return new BookSnapshot(buffer);
+    }
+
+    // Writes the book to path, replacing any existing file atomically, so a crash while writing
+    // never leaves a partial snapshot behind. journalPosition is the CommandJournal.getPosition()
+    // that the snapshot is consistent with.
+    public static void write(OrderBook book, Path path, long journalPosition) throws Exception {
+        capture(book, journalPosition).writeTo(path);
+    }
+
+    // Writes the captured snapshot to path and forces it to disk, replacing any existing file
+    // atomically. Can be called from any thread, and more than once.
+    public void writeTo(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteBuffer buffer = image.duplicate();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while ( buffer.hasRemaining() )
+                channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Loads the snapshot into an empty book and returns the journal position it was taken at,
+    // so that the rest of the journal can be replayed with CommandJournal.replay(book, position).
+    public static long load(Path path, OrderBook book) throws Exception {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if ( buffer.getInt() != MAGIC || buffer.getInt() != VERSION )
+                throw new IOException("Not a version " + VERSION + " order book snapshot: " + path);
+
+            double tickSize = buffer.getDouble();
+            if ( tickSize != book.getTickSize() )
+                throw new Exception("Snapshot tick size " + tickSize + " does not match the book's tick size " + book.getTickSize());
+
+            long journalPosition = buffer.getLong();
+            for (char side : SIDES) {
+                int levelCount = buffer.getInt();
+                for (int l = 0; l < levelCount; l++) {
+                    long priceTicks = buffer.getLong();
+                    int orderCount = buffer.getInt();
+                    // Adding the orders in time priority recreates each level's queue
+                    for (int i = 0; i < orderCount; i++)
+                        book.addOrderTicks(buffer.getLong(), priceTicks, side, buffer.getLong(), buffer.getLong());
+                }
+            }
+            return journalPosition;
+        }
+    }
+
+    // Loads the snapshot and then replays the journal from where the snapshot was taken.
+    public static void recover(Path snapshot, CommandJournal journal, OrderBook book) throws Exception {
+        long position = load(snapshot, book);
+        journal.replay(book, position);
+    }
+
+    // Returns the buffer, or a copy of it twice as large (or more) if it has less than bytes left.
+    private static ByteBuffer ensureSpace(ByteBuffer buffer, int bytes) {
+        if ( buffer.remaining() >= bytes )
+            return buffer;
+        int capacity = Math.max(buffer.capacity() << 1, buffer.position() + bytes);
+        ByteBuffer bigger = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        return bigger.put(buffer);
+    }
+}
@@ -0,0 +1,6 @@
+package com.mizuho;
+
+// Work to run against an OrderBook on its OrderBookEventLoop thread (see OrderBookEventLoop.execute()).
+public interface BookTask {
+    void run(OrderBook book) throws Exception;
+}
@@ -0,0 +1,31 @@
+package com.mizuho;
+
+import java.nio.ByteBuffer;
+
+// A cancel of an order (see MessageFlyweight):
+//   id(8)
+public class CancelOrderMessage extends MessageFlyweight {
+    public static final int TEMPLATE_ID = 2;
+    public static final int BLOCK_LENGTH = 8;
+
+    private static final int ID_OFFSET = 0;
+
+    public CancelOrderMessage wrap(ByteBuffer buffer, int offset) {
+        wrapBuffer(buffer, offset);
+        return this;
+    }
+
+    public CancelOrderMessage wrapAndApplyHeader(ByteBuffer buffer, int offset, MessageHeader header) {
+        header.wrap(buffer, offset).apply(BLOCK_LENGTH, TEMPLATE_ID);
+        return wrap(buffer, offset + MessageHeader.ENCODED_LENGTH);
+    }
+
+    public long id() {
+        return buffer.getLong(offset + ID_OFFSET);
+    }
+
+    public CancelOrderMessage id(long id) {
+        buffer.putLong(offset + ID_OFFSET, id);
+        return this;
+    }
+}
@@ -0,0 +1,8 @@
+package com.mizuho;
+
+// Completion of a command applied asynchronously by an OrderBookEventLoop. Called on the
+// event loop thread, so implementations should return quickly.
+public interface CommandCallback {
+    // error is null if the command succeeded, otherwise the exception the OrderBook threw.
+    void onComplete(long id, Exception error);
+}
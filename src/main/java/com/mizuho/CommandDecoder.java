@@ -0,0 +1,46 @@
+package com.mizuho;
+
+import java.nio.ByteBuffer;
+
+// Decodes add, cancel and modify messages (AddOrderMessage, CancelOrderMessage and
+// ModifyOrderMessage, each after a MessageHeader) straight out of a buffer and applies them to
+// an OrderBook, without creating an Order or any other object along the way. This is the
+// receiving end of a gateway feeding a book from another process, and also how CommandJournal
+// replays its records.
+//
+// Not thread safe - give each thread its own.
+public class CommandDecoder {
+    private final MessageHeader header = new MessageHeader();
+    private final AddOrderMessage add = new AddOrderMessage();
+    private final CancelOrderMessage cancel = new CancelOrderMessage();
+    private final ModifyOrderMessage modify = new ModifyOrderMessage();
+
+    // Applies the message at offset to the book and returns its length, header included, or 0
+    // if there is no message there (a template id of 0).
+    public int apply(ByteBuffer buffer, int offset, OrderBook book) throws Exception {
+        header.wrap(buffer, offset);
+        int templateId = header.templateId();
+        if ( templateId == 0 )
+            return 0;
+        if ( header.schemaId() != MessageHeader.SCHEMA_ID )
+            throw new Exception("Unknown message schema " + header.schemaId() + " at position " + offset);
+
+        int body = offset + MessageHeader.ENCODED_LENGTH;
+        switch (templateId) {
+            case AddOrderMessage.TEMPLATE_ID:
+                add.wrap(buffer, body);
+                book.addOrderTicks(add.id(), add.priceTicks(), add.side(), add.size(), add.owner());
+                break;
+            case CancelOrderMessage.TEMPLATE_ID:
+                book.removeOrder(cancel.wrap(buffer, body).id());
+                break;
+            case ModifyOrderMessage.TEMPLATE_ID:
+                modify.wrap(buffer, body);
+                book.modifyOrderSize(modify.id(), modify.size());
+                break;
+            default:
+                throw new Exception("Unknown command template " + templateId + " at position " + offset);
+        }
+        return MessageHeader.ENCODED_LENGTH + header.blockLength();
+    }
+}
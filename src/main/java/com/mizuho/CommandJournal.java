@@ -0,0 +1,273 @@
+package com.mizuho;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// An append-only journal of the adds, cancels and modifies applied to an OrderBook, written
+// to a memory-mapped file so that an append is a few stores into the page cache rather than
+// a system call. Replaying it into an empty book rebuilds the book after a restart.
+//
+// File layout (little endian): a header of MAGIC and VERSION as ints, then one record per
+// command, with no padding. Each record is a wire message - a MessageHeader and then an
+// AddOrderMessage, CancelOrderMessage or ModifyOrderMessage - so the journal is written with the
+// same flyweights a gateway would use, and replayed with a CommandDecoder:
+//   ADD     header(8) id(8) priceTicks(8) size(8) owner(8) side(1)  - 41 bytes
+//   CANCEL  header(8) id(8)                                         - 16 bytes
+//   MODIFY  header(8) id(8) size(8)                                 - 24 bytes
+// The file is zero filled when created, and from the last complete record on when reopened, and
+// a record's template id is written last, so replay stops cleanly at the first record that was
+// never (completely) written. A replace is journaled
+// as a CANCEL and then an ADD of the same id, claimed and made visible together.
+//
+// Appends from several threads are safe: each claims its space with one getAndAdd(). Every
+// syncEvery records the journal is forced to disk (fsync) by a background thread, so that an
+// append - made by an OrderBook holding its locks - never waits for the disk; flush() and close()
+// force it on the calling thread. Only the range written since the last force is forced, and
+// getDurablePosition() tells how far that has got. With syncEvery = 0 it is only forced on
+// flush() and close(), leaving the rest to the OS. The file has a fixed capacity and appends
+// fail once it is full.
+public class CommandJournal implements Closeable {
+    private static final Logger log = LogManager.getLogger(CommandJournal.class);
+
+    static final int MAGIC = 0x4D5A4A31; // "MZJ1"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 8;
+
+    static final int ADD_SIZE = MessageHeader.ENCODED_LENGTH + AddOrderMessage.BLOCK_LENGTH;
+    static final int CANCEL_SIZE = MessageHeader.ENCODED_LENGTH + CancelOrderMessage.BLOCK_LENGTH;
+    static final int MODIFY_SIZE = MessageHeader.ENCODED_LENGTH + ModifyOrderMessage.BLOCK_LENGTH;
+
+    // Each appending thread has its own flyweights
+    private static class Encoders {
+        private final MessageHeader header = new MessageHeader();
+        private final AddOrderMessage add = new AddOrderMessage();
+        private final CancelOrderMessage cancel = new CancelOrderMessage();
+        private final ModifyOrderMessage modify = new ModifyOrderMessage();
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int syncEvery;
+
+    private final AtomicLong position = new AtomicLong(HEADER_SIZE); // next free byte
+    private final AtomicLong recordsSinceSync = new AtomicLong();
+    private final Object flushLock = new Object();
+    private volatile long durablePosition; // everything before this is on disk; written under flushLock
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+    private final ExecutorService flusher; // null when syncEvery = 0
+    private final ThreadLocal<Encoders> encoders = ThreadLocal.withInitial(Encoders::new);
+
+    // Opens the journal at path, creating it with the given capacity in bytes if it does not
+    // exist. An existing journal is appended to after its last complete record.
+    public static CommandJournal open(Path path, int capacity, int syncEvery) throws IOException {
+        return new CommandJournal(path, capacity, syncEvery);
+    }
+
+    private CommandJournal(Path path, int capacity, int syncEvery) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = channel.size() == 0;
+        this.capacity = created ? capacity : (int)Math.max(capacity, channel.size());
+        this.syncEvery = syncEvery;
+        this.flusher = syncEvery > 0 ? Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+        this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if ( created ) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+        }
+        else if ( buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION ) {
+            channel.close();
+            if ( flusher != null )
+                flusher.shutdown();
+            throw new IOException("Not a version " + VERSION + " command journal: " + path);
+        }
+        long end = endOfRecords();
+        if ( !created )
+            clearFrom((int)end);
+        position.set(end);
+        durablePosition = created ? 0 : end; // a new file's header is forced with its first records
+    }
+
+    public void appendAdd(long id, long priceTicks, char side, long size) throws Exception {
+        appendAdd(id, priceTicks, side, size, 0);
+    }
+
+    public void appendAdd(long id, long priceTicks, char side, long size, long owner) throws Exception {
+        int at = claim(ADD_SIZE);
+        Encoders e = encoders.get();
+        e.add.wrap(buffer, at + MessageHeader.ENCODED_LENGTH).id(id).priceTicks(priceTicks).size(size).owner(owner).side(side);
+        commit(e.header, at, AddOrderMessage.BLOCK_LENGTH, AddOrderMessage.TEMPLATE_ID);
+    }
+
+    public void appendCancel(long id) throws Exception {
+        int at = claim(CANCEL_SIZE);
+        Encoders e = encoders.get();
+        e.cancel.wrap(buffer, at + MessageHeader.ENCODED_LENGTH).id(id);
+        commit(e.header, at, CancelOrderMessage.BLOCK_LENGTH, CancelOrderMessage.TEMPLATE_ID);
+    }
+
+    public void appendModify(long id, long size) throws Exception {
+        int at = claim(MODIFY_SIZE);
+        Encoders e = encoders.get();
+        e.modify.wrap(buffer, at + MessageHeader.ENCODED_LENGTH).id(id).size(size);
+        commit(e.header, at, ModifyOrderMessage.BLOCK_LENGTH, ModifyOrderMessage.TEMPLATE_ID);
+    }
+
+    // Appends the cancel of an order and the add that replaces it at a new price or size, with
+    // one claim so that either both are journaled or neither is. The add is committed before the
+    // cancel, so replay sees neither until both are complete.
+    public void appendReplace(long id, long priceTicks, char side, long size, long owner) throws Exception {
+        int at = claim(CANCEL_SIZE + ADD_SIZE);
+        Encoders e = encoders.get();
+        e.cancel.wrap(buffer, at + MessageHeader.ENCODED_LENGTH).id(id);
+        e.add.wrap(buffer, at + CANCEL_SIZE + MessageHeader.ENCODED_LENGTH).id(id).priceTicks(priceTicks).size(size).owner(owner).side(side);
+        e.header.wrap(buffer, at + CANCEL_SIZE).apply(AddOrderMessage.BLOCK_LENGTH, AddOrderMessage.TEMPLATE_ID);
+        commit(e.header, at, CancelOrderMessage.BLOCK_LENGTH, CancelOrderMessage.TEMPLATE_ID);
+    }
+
+    // Applies every record in the journal to the book, in the order they were written, and
+    // returns how many there were. The book should be empty and must not have this journal
+    // set yet (or the replayed commands would be journaled again).
+    public long replay(OrderBook book) throws Exception {
+        return replay(book, HEADER_SIZE);
+    }
+
+    // As replay(OrderBook), starting from the given journal position (see getPosition()).
+    public long replay(OrderBook book, long from) throws Exception {
+        long end = Math.min(position.get(), capacity);
+        CommandDecoder decoder = new CommandDecoder();
+        long count = 0;
+        int at = (int)from;
+        while ( at < end ) {
+            int length = decoder.apply(buffer, at, book);
+            if ( length == 0 )
+                return count; // claimed by a writer that has not committed it yet
+            at += length;
+            count++;
+        }
+        return count;
+    }
+
+    // The position after the last record appended, e.g. to record alongside a snapshot.
+    public long getPosition() {
+        return Math.min(position.get(), capacity);
+    }
+
+    // The position up to which the journal is known to be on disk: every append that returned
+    // before the last force started.
+    public long getDurablePosition() {
+        return durablePosition;
+    }
+
+    // Forces everything appended so far to disk, on the calling thread, so it should not be
+    // called while holding an OrderBook's locks.
+    public void flush() {
+        recordsSinceSync.set(0);
+        synchronized (flushLock) {
+            long from = durablePosition;
+            long to = getPosition();
+            if ( to > from ) {
+                buffer.force((int)from, (int)(to - from));
+                durablePosition = to;
+            }
+        }
+    }
+
+    // Lets a background flush already asked for finish, then forces the rest.
+    @Override
+    public void close() throws IOException {
+        if ( flusher != null ) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        channel.close();
+    }
+
+    private int claim(int size) throws Exception {
+        long at = position.getAndAdd(size);
+        if ( at + size > capacity )
+            throw new Exception("Journal is full"); // the journal stays full, so no need to give the space back
+        return (int)at;
+    }
+
+    // Writes the record's header, the template id last, which is what makes it visible to replay,
+    // and every syncEvery records asks the flusher for a force - at most one is queued at a time.
+    private void commit(MessageHeader header, int at, int blockLength, int templateId) {
+        header.wrap(buffer, at).apply(blockLength, templateId);
+        if ( syncEvery > 0 && recordsSinceSync.incrementAndGet() >= syncEvery && flushPending.compareAndSet(false, true) ) {
+            try {
+                flusher.execute(this::flushInBackground);
+            }
+            catch (RejectedExecutionException e) {
+                flushPending.set(false); // closing, and close() forces everything anyway
+            }
+        }
+    }
+
+    private void flushInBackground() {
+        flushPending.set(false);
+        try {
+            flush();
+        }
+        catch (RuntimeException e) {
+            log.error("Failed to force the journal to disk", e);
+        }
+    }
+
+    // Zeroes whatever follows the last complete record - the rest of a record torn by a crash, or
+    // records committed after it by other threads - so that a shorter record appended over it
+    // cannot leave bytes behind that replay would read as a record of their own. Only words that
+    // are not already zero are written, so the unused tail of the file is read but not dirtied.
+    private void clearFrom(int at) {
+        for (; at + 8 <= capacity; at += 8) {
+            if ( buffer.getLong(at) != 0 )
+                buffer.putLong(at, 0L);
+        }
+        for (; at < capacity; at++) {
+            if ( buffer.get(at) != 0 )
+                buffer.put(at, (byte)0);
+        }
+    }
+
+    // Walks the records of an existing journal to find where the next one should go.
+    private long endOfRecords() {
+        MessageHeader header = new MessageHeader();
+        int at = HEADER_SIZE;
+        while ( at + MessageHeader.ENCODED_LENGTH <= capacity ) {
+            header.wrap(buffer, at);
+            if ( header.templateId() == 0 )
+                return at;
+            int size = MessageHeader.ENCODED_LENGTH + header.blockLength();
+            if ( at + size > capacity )
+                return at;
+            at += size;
+        }
+        return at;
+    }
+}
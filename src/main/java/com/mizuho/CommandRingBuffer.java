@@ -0,0 +1,79 @@
+package com.mizuho;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+// A bounded, preallocated, lock-free ring of OrderCommands for many producer threads and a
+// single consumer thread (in the style of the LMAX Disruptor).
+//
+// A producer claims the next sequence number with a single getAndIncrement(), fills in the
+// preallocated command for that slot and then publishes it by writing the sequence number
+// into the slot's entry of the published array. The consumer reads the slots in sequence
+// order for as long as they are published. Nothing is allocated once the ring is built.
+//
+// When the ring is full, producers spin until the consumer frees a slot - i.e. the ring
+// applies back pressure rather than growing.
+class CommandRingBuffer {
+    private final OrderCommand[] entries;
+    private final AtomicLongArray published; // sequence number last published in each slot
+    private final int mask;
+
+    private final AtomicLong claimed = new AtomicLong(); // next sequence to hand to a producer
+    private final AtomicLong consumed = new AtomicLong(); // next sequence the consumer will read
+
+    CommandRingBuffer(int capacity) {
+        if ( capacity <= 0 || Integer.bitCount(capacity) != 1 )
+            throw new IllegalArgumentException("Ring buffer capacity must be a power of two: " + capacity);
+
+        entries = new OrderCommand[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = new OrderCommand();
+            published.set(i, -1);
+        }
+        mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    // Claims the next slot, waiting for the consumer if the ring is full. The caller must
+    // fill in getCommand(sequence) and then call publish(sequence).
+    public long claim() {
+        long sequence = claimed.getAndIncrement();
+        while ( sequence - entries.length >= consumed.get() )
+            Thread.onSpinWait();
+        return sequence;
+    }
+
+    public OrderCommand getCommand(long sequence) {
+        return entries[(int)sequence & mask];
+    }
+
+    public void publish(long sequence) {
+        published.lazySet((int)sequence & mask, sequence);
+    }
+
+    // Consumer only. Passes up to limit published commands to the handler, in sequence
+    // order, and returns how many there were.
+    public int drain(Consumer<OrderCommand> handler, int limit) {
+        long next = consumed.get();
+        int count = 0;
+        while ( count < limit && published.get((int)next & mask) == next ) {
+            handler.accept(entries[(int)next & mask]);
+            next++;
+            count++;
+        }
+
+        if ( count > 0 )
+            consumed.lazySet(next); // frees the slots for the producers
+        return count;
+    }
+
+    // True if nothing has been claimed that the consumer has not yet read.
+    public boolean isEmpty() {
+        return consumed.get() == claimed.get();
+    }
+}
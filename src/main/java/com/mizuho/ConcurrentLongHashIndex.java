@@ -0,0 +1,69 @@
+package com.mizuho;
+
+// A thread safe LongHashIndex, split into independently locked stripes so that threads
+// working on different keys rarely contend. Each stripe is a plain LongHashIndex, so like
+// it there is no boxing of keys and no per-mapping allocation once the stripes have grown.
+//
+// Unlike ConcurrentHashMap, get() takes the stripe lock. The critical sections are a handful
+// of array reads, and at 64 stripes the lock is almost always uncontended.
+class ConcurrentLongHashIndex<V> {
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+
+    private final LongHashIndex<V>[] stripes;
+
+    ConcurrentLongHashIndex() {
+        this(0);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ConcurrentLongHashIndex(int expectedSize) {
+        stripes = new LongHashIndex[STRIPES];
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new LongHashIndex<>(expectedSize / STRIPES);
+    }
+
+    public V get(long key) {
+        LongHashIndex<V> stripe = stripeFor(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    public V put(long key, V value) {
+        LongHashIndex<V> stripe = stripeFor(key);
+        synchronized (stripe) {
+            return stripe.put(key, value);
+        }
+    }
+
+    public V putIfAbsent(long key, V value) {
+        LongHashIndex<V> stripe = stripeFor(key);
+        synchronized (stripe) {
+            return stripe.putIfAbsent(key, value);
+        }
+    }
+
+    public V remove(long key) {
+        LongHashIndex<V> stripe = stripeFor(key);
+        synchronized (stripe) {
+            return stripe.remove(key);
+        }
+    }
+
+    // Not a consistent total while other threads are writing.
+    public int size() {
+        int size = 0;
+        for (LongHashIndex<V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    // The stripe is chosen from the top bits of the hash, as the stripe itself uses the low bits.
+    private LongHashIndex<V> stripeFor(long key) {
+        return stripes[LongHashIndex.hash(key) >>> (32 - STRIPE_BITS)];
+    }
+}
@@ -0,0 +1,108 @@
+package com.mizuho;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Conflates an OrderBook's level updates into a single "latest top of book" for consumers
+// that cannot (or need not) see every change, e.g. GUIs and risk.
+//
+// Whichever thread changes the book republishes its best `depth` levels into a DepthBuffer,
+// a single slot guarded by a sequence lock. The book thread therefore never blocks on, or
+// queues for, a reader, and however slow a subscriber is it only ever sees the latest state -
+// intermediate states are simply overwritten.
+//
+// Subscribers either poll() at their own rate, on their own thread, or subscribe() to be called
+// back on a timer when there has been a change. Each subscription has its own timer thread, so a
+// slow subscriber only delays itself. One publisher serves one book (i.e. one instrument).
+public class ConflatingTopOfBookPublisher implements LevelListener, AutoCloseable {
+    private static final Logger log = LogManager.getLogger(ConflatingTopOfBookPublisher.class);
+
+    private final PriceLadder bids;
+    private final PriceLadder offers;
+    private final TickSize tickSize;
+    private final DepthBuffer buffer;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // Registers with the book as a LevelListener, so like one it should be created before the
+    // book is in use.
+    public ConflatingTopOfBookPublisher(OrderBook book, int depth) throws Exception {
+        this.buffer = new DepthBuffer(depth);
+        this.bids = book.getQueueFromSide('B');
+        this.offers = book.getQueueFromSide('O');
+        this.tickSize = book.getTickConverter();
+        book.addLevelListener(this);
+    }
+
+    public int getDepth() {
+        return buffer.getDepth();
+    }
+
+    @Override
+    public void onLevelUpdate(Action action, char side, double price, long size, int orderCount) {
+        buffer.publish(bids, offers);
+    }
+
+    // Copies the latest top of book into topOfBook, unless it already has it. Returns whether
+    // it was changed. Never blocks the book thread, and allocates nothing.
+    public boolean poll(TopOfBook topOfBook) {
+        return buffer.read(topOfBook, tickSize);
+    }
+
+    // Calls the listener on a timer thread of its own every period, if the top of book has
+    // changed since the last call. If the listener is still busy when the next period is due,
+    // that call waits for it - only this subscription falls behind. An exception thrown by the
+    // listener is logged and the subscription carries on. Close the returned subscription to
+    // unsubscribe.
+    public Subscription subscribe(TopOfBookListener listener, long period, TimeUnit unit) {
+        Subscription subscription = new Subscription();
+        subscriptions.add(subscription);
+        TopOfBook topOfBook = new TopOfBook(buffer.getDepth());
+        subscription.scheduler.scheduleAtFixedRate(() -> {
+            try {
+                if ( poll(topOfBook) )
+                    listener.onTopOfBook(topOfBook);
+            }
+            catch (RuntimeException e) {
+                // Letting it out would cancel the schedule, silently ending the subscription
+                log.error("TopOfBookListener failed", e);
+            }
+        }, 0, period, unit);
+        return subscription;
+    }
+
+    // Stops all subscriptions. The publisher stays registered with the book.
+    @Override
+    public void close() {
+        for (Subscription subscription : subscriptions)
+            subscription.close();
+    }
+
+    public class Subscription implements AutoCloseable {
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "top-of-book-subscriber");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private Subscription() {
+        }
+
+        public boolean isClosed() {
+            return scheduler.isShutdown();
+        }
+
+        // Stops the subscription's timer thread. A call to the listener in progress is interrupted.
+        @Override
+        public void close() {
+            scheduler.shutdownNow();
+            subscriptions.remove(this);
+        }
+    }
+}
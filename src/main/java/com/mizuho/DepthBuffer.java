@@ -0,0 +1,120 @@
+package com.mizuho;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// The best `depth` levels of both sides of a book, republished by whichever thread changes the
+// book and read by any number of threads without locking, using a sequence lock (seqlock):
+//
+//   writer: version++ (now odd), write the slot, version++ (even again)
+//   reader: read version, retry while it is odd, copy the slot, re-read version, retry if it moved
+//
+// so a reader always gets one whole publication and never blocks or slows a writer. The slot
+// is a single flat long[]:
+//   [0] bid level count, [1] offer level count,
+//   then per side (bids first) `depth` price ticks followed by `depth` sizes.
+//
+// If several threads publish at once, one writes the slot and the others leave it a flag to
+// write it again, so none of them wait and the last state is always published.
+class DepthBuffer {
+    private static final int BID_LEVELS = 0;
+    private static final int OFFER_LEVELS = 1;
+    private static final int BIDS = 2;
+
+    private final int depth;
+    private final int offers; // index of the first offer price
+    private final long[] slot; // only written by the thread that holds `publishing`
+    private volatile long version;
+
+    private final AtomicBoolean publishing = new AtomicBoolean();
+    private final AtomicBoolean republish = new AtomicBoolean();
+
+    DepthBuffer(int depth) {
+        if ( depth <= 0 )
+            throw new IllegalArgumentException("Invalid depth: " + depth);
+
+        this.depth = depth;
+        this.offers = BIDS + 2 * depth;
+        this.slot = new long[BIDS + 4 * depth];
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    // Copies the current best levels of the ladders into the slot.
+    public void publish(PriceLadder bidLadder, PriceLadder offerLadder) {
+        republish.set(true);
+        // If another thread is publishing it will see the flag and publish again once it is done
+        while ( republish.get() && publishing.compareAndSet(false, true) ) {
+            try {
+                republish.set(false);
+                long v = version;
+                version = v + 1; // odd - readers retry
+                VarHandle.storeStoreFence(); // the odd version must be visible before any of the slot changes
+
+                slot[BID_LEVELS] = copyLevels(bidLadder, BIDS);
+                slot[OFFER_LEVELS] = copyLevels(offerLadder, offers);
+
+                version = v + 2;
+            }
+            finally {
+                publishing.set(false);
+            }
+        }
+    }
+
+    // Copies the latest publication into topOfBook, unless it already has it, and returns
+    // whether it did. Allocates nothing.
+    public boolean read(TopOfBook topOfBook, TickSize tickSize) {
+        if ( topOfBook.getDepth() != depth )
+            throw new IllegalArgumentException("TopOfBook depth " + topOfBook.getDepth() + " does not match " + depth);
+
+        while ( true ) {
+            long before = version;
+            if ( before == topOfBook.sequence )
+                return false;
+            if ( (before & 1) != 0 ) {
+                Thread.onSpinWait(); // being written
+                continue;
+            }
+
+            // Counts are clamped so that a torn read cannot index out of the arrays before it is retried
+            int bidCount = (int)Math.min(Math.max(slot[BID_LEVELS], 0), depth);
+            int offerCount = (int)Math.min(Math.max(slot[OFFER_LEVELS], 0), depth);
+            copy(BIDS, bidCount, topOfBook.bidPrices(), topOfBook.bidSizes(), tickSize);
+            copy(offers, offerCount, topOfBook.offerPrices(), topOfBook.offerSizes(), tickSize);
+
+            VarHandle.loadLoadFence(); // the copy must be read before the version is checked again
+            if ( version == before ) {
+                topOfBook.bidLevels = bidCount;
+                topOfBook.offerLevels = offerCount;
+                topOfBook.sequence = before;
+                return true;
+            }
+        }
+    }
+
+    // A level that has just been emptied may still be in the ladder until it is retired, so
+    // empty levels are skipped.
+    private long copyLevels(PriceLadder ladder, int at) {
+        int count = 0;
+        PriceLevel[] levels = ladder.getLevels();
+        for (int i = 0; i < levels.length && count < depth; i++) {
+            long size = levels[i].getTotalSize();
+            if ( size > 0 ) {
+                slot[at + count] = levels[i].getPriceTicks();
+                slot[at + depth + count] = size;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void copy(int at, int count, double[] toPrices, long[] toSizes, TickSize tickSize) {
+        for (int i = 0; i < count; i++) {
+            toPrices[i] = tickSize.toPrice(slot[at + i]);
+            toSizes[i] = slot[at + depth + i];
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.mizuho;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+// Records the latency in nanoseconds of each OrderBook operation into an HdrHistogram
+// Recorder. Recording is wait-free and allocation free, and any number of threads may record
+// at once without contending on a lock, so it is cheap enough to leave on in production.
+//
+// A reader (e.g. a LatencyReporter) takes interval histograms: each call returns what was
+// recorded since the previous call for that operation, with no pause for the recording threads.
+public class LatencyRecorder {
+    public enum Operation {
+        ADD_ORDER,
+        REMOVE_ORDER,
+        MODIFY_ORDER_SIZE,
+        REPLACE_ORDER,
+        APPLY_BATCH,
+        MASS_CANCEL,
+        GET_PRICE_FOR_SIDE_AND_LEVEL,
+        GET_SIZE_FOR_SIDE_AND_LEVEL,
+        GET_ORDERS_FOR_SIDE,
+        FOR_EACH_ORDER
+    }
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Recorder[] recorders = new Recorder[Operation.values().length];
+    private final Histogram[] intervals = new Histogram[recorders.length]; // recycled, guarded by this
+
+    public LatencyRecorder() {
+        for (int i = 0; i < recorders.length; i++)
+            recorders[i] = new Recorder(SIGNIFICANT_DIGITS);
+    }
+
+    // startNanos is the System.nanoTime() when the operation started.
+    public void record(Operation operation, long startNanos) {
+        recorders[operation.ordinal()].recordValue(System.nanoTime() - startNanos);
+    }
+
+    // Returns the latencies recorded for the operation since the previous call. The histogram
+    // is reused by the next call for the same operation, so copy() it to keep it.
+    public synchronized Histogram getIntervalHistogram(Operation operation) {
+        int i = operation.ordinal();
+        intervals[i] = recorders[i].getIntervalHistogram(intervals[i]);
+        return intervals[i];
+    }
+}
@@ -0,0 +1,98 @@
+package com.mizuho;
+
+import org.HdrHistogram.Histogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Periodically takes the interval histograms from a LatencyRecorder and logs a percentile
+// summary for each operation, optionally also appending it to a CSV file. Runs on its own
+// daemon thread, so the OrderBook threads never wait for it.
+public class LatencyReporter implements AutoCloseable {
+    private static final Logger log = LogManager.getLogger(LatencyReporter.class);
+
+    static final String CSV_HEADER = "timestamp,operation,count,mean_ns,p50_ns,p90_ns,p99_ns,p99.9_ns,max_ns";
+
+    private final LatencyRecorder recorder;
+    private final BufferedWriter csv; // null if only logging
+    private final ScheduledExecutorService scheduler;
+
+    // csvFile may be null. If the file does not exist it is created with a header row.
+    public LatencyReporter(LatencyRecorder recorder, Path csvFile, long period, TimeUnit unit) throws IOException {
+        this.recorder = recorder;
+        if ( csvFile != null ) {
+            boolean exists = Files.exists(csvFile);
+            this.csv = Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            if ( !exists ) {
+                csv.write(CSV_HEADER);
+                csv.newLine();
+            }
+        }
+        else {
+            this.csv = null;
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "latency-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::report, period, period, unit);
+    }
+
+    // Reports the latencies recorded since the last report. Operations with nothing recorded are skipped.
+    public synchronized void report() {
+        long now = System.currentTimeMillis();
+        try {
+            for (LatencyRecorder.Operation operation : LatencyRecorder.Operation.values()) {
+                Histogram histogram = recorder.getIntervalHistogram(operation);
+                if ( histogram.getTotalCount() == 0 )
+                    continue;
+
+                log.info(() -> String.format("%s count=%d mean=%.0fns p50=%dns p90=%dns p99=%dns p99.9=%dns max=%dns",
+                        operation, histogram.getTotalCount(), histogram.getMean(),
+                        histogram.getValueAtPercentile(50.0), histogram.getValueAtPercentile(90.0),
+                        histogram.getValueAtPercentile(99.0), histogram.getValueAtPercentile(99.9),
+                        histogram.getMaxValue()));
+
+                if ( csv != null ) {
+                    csv.write(now + "," + operation + "," + histogram.getTotalCount() + "," +
+                            Math.round(histogram.getMean()) + "," +
+                            histogram.getValueAtPercentile(50.0) + "," + histogram.getValueAtPercentile(90.0) + "," +
+                            histogram.getValueAtPercentile(99.0) + "," + histogram.getValueAtPercentile(99.9) + "," +
+                            histogram.getMaxValue());
+                    csv.newLine();
+                }
+            }
+            if ( csv != null )
+                csv.flush();
+        }
+        catch (IOException e) {
+            log.error("Failed to write latency report", e);
+        }
+    }
+
+    // Stops the periodic reports, writes a final one and closes the CSV file.
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report();
+        if ( csv != null )
+            csv.close();
+    }
+}
@@ -0,0 +1,17 @@
+package com.mizuho;
+
+// Receives market-by-price (L2) updates as orders are added, matched, cancelled and resized:
+// a level is NEW when its first order arrives, CHANGEs as its total size or order count
+// moves and is DELETEd when its last order goes. Applying the updates in order to a copy of
+// each side keeps that copy equal to the book, with no polling.
+//
+// Called while the level's lock is held, so the updates for one level arrive in the order
+// they were applied. Updates for different levels may arrive on different threads at once
+// if the book is updated from several threads. Implementations should be quick and must not
+// modify the same OrderBook.
+public interface LevelListener {
+    enum Action { NEW, CHANGE, DELETE }
+
+    // For DELETE the size and order count are 0.
+    void onLevelUpdate(Action action, char side, double price, long size, int orderCount);
+}
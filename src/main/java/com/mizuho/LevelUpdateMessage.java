@@ -0,0 +1,73 @@
+package com.mizuho;
+
+import java.nio.ByteBuffer;
+
+// A market by price (L2) level update - see LevelListener and MessageFlyweight:
+//   price(8) size(8) orderCount(4) action(1) side(1)
+public class LevelUpdateMessage extends MessageFlyweight {
+    public static final int TEMPLATE_ID = 11;
+    public static final int BLOCK_LENGTH = 22;
+
+    private static final LevelListener.Action[] ACTIONS = LevelListener.Action.values();
+
+    private static final int PRICE_OFFSET = 0;
+    private static final int SIZE_OFFSET = 8;
+    private static final int ORDER_COUNT_OFFSET = 16;
+    private static final int ACTION_OFFSET = 20;
+    private static final int SIDE_OFFSET = 21;
+
+    public LevelUpdateMessage wrap(ByteBuffer buffer, int offset) {
+        wrapBuffer(buffer, offset);
+        return this;
+    }
+
+    public LevelUpdateMessage wrapAndApplyHeader(ByteBuffer buffer, int offset, MessageHeader header) {
+        header.wrap(buffer, offset).apply(BLOCK_LENGTH, TEMPLATE_ID);
+        return wrap(buffer, offset + MessageHeader.ENCODED_LENGTH);
+    }
+
+    public LevelListener.Action action() {
+        return ACTIONS[buffer.get(offset + ACTION_OFFSET)];
+    }
+
+    public LevelUpdateMessage action(LevelListener.Action action) {
+        buffer.put(offset + ACTION_OFFSET, (byte)action.ordinal());
+        return this;
+    }
+
+    public char side() {
+        return (char)buffer.get(offset + SIDE_OFFSET);
+    }
+
+    public LevelUpdateMessage side(char side) {
+        buffer.put(offset + SIDE_OFFSET, (byte)side);
+        return this;
+    }
+
+    public double price() {
+        return buffer.getDouble(offset + PRICE_OFFSET);
+    }
+
+    public LevelUpdateMessage price(double price) {
+        buffer.putDouble(offset + PRICE_OFFSET, price);
+        return this;
+    }
+
+    public long size() {
+        return buffer.getLong(offset + SIZE_OFFSET);
+    }
+
+    public LevelUpdateMessage size(long size) {
+        buffer.putLong(offset + SIZE_OFFSET, size);
+        return this;
+    }
+
+    public int orderCount() {
+        return buffer.getInt(offset + ORDER_COUNT_OFFSET);
+    }
+
+    public LevelUpdateMessage orderCount(int orderCount) {
+        buffer.putInt(offset + ORDER_COUNT_OFFSET, orderCount);
+        return this;
+    }
+}
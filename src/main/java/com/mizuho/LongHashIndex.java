@@ -0,0 +1,145 @@
+package com.mizuho;
+
+// A hash map from primitive long keys to objects, using open addressing with linear probing.
+// Unlike HashMap<Long, V> it does not box the key and does not allocate an entry node per
+// mapping - the keys and values live in two parallel arrays, so once the table has grown to
+// its working size, put() and remove() allocate nothing.
+//
+// Removal uses backward shift deletion rather than tombstones, so the table never fills up
+// with deleted slots under a heavy add/cancel workload.
+//
+// Not thread safe - see ConcurrentLongHashIndex.
+class LongHashIndex<V> {
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private Object[] values; // null marks an empty slot, so null values are not allowed
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    LongHashIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    LongHashIndex(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while ( capacity * LOAD_FACTOR < expectedSize )
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            Object value = values[i];
+            if ( value == null )
+                return null;
+            if ( keys[i] == key )
+                return (V)value;
+        }
+    }
+
+    // Returns the previous value for the key, or null if there was none.
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if ( value == null )
+            throw new NullPointerException("Null values are not supported");
+
+        int i = hash(key) & mask;
+        for ( ; values[i] != null; i = (i + 1) & mask) {
+            if ( keys[i] == key ) {
+                V previous = (V)values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if ( ++size > resizeThreshold )
+            resize();
+        return null;
+    }
+
+    // Returns the existing value for the key without replacing it, or null if the value was added.
+    public V putIfAbsent(long key, V value) {
+        V existing = get(key);
+        if ( existing != null )
+            return existing;
+        put(key, value);
+        return null;
+    }
+
+    // Returns the removed value, or null if the key was not present.
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = hash(key) & mask;
+        for ( ; ; i = (i + 1) & mask) {
+            if ( values[i] == null )
+                return null;
+            if ( keys[i] == key )
+                break;
+        }
+
+        V removed = (V)values[i];
+        values[i] = null;
+        size--;
+
+        // Shift back any following entries of the probe run that could no longer be found
+        // now there is a gap in front of them.
+        int gap = i;
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            if ( ((j - home) & mask) >= ((j - gap) & mask) ) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                values[j] = null;
+                gap = j;
+            }
+        }
+        return removed;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if ( oldValues[i] != null ) {
+                int j = hash(oldKeys[i]) & mask;
+                while ( values[j] != null )
+                    j = (j + 1) & mask;
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int)(capacity * LOAD_FACTOR);
+    }
+
+    // Order ids are often sequential, so spread them over the table (Fibonacci hashing).
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+}
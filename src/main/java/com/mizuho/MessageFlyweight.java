@@ -0,0 +1,31 @@
+package com.mizuho;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// The base of the wire message flyweights (see MessageHeader). A flyweight holds no message
+// data of its own - it is wrapped over a position in a ByteBuffer, heap or direct, and its
+// getters and setters read and write the fields there with absolute gets and puts. One instance
+// is reused for every message, so encoding and decoding allocate nothing and copy nothing.
+//
+// Messages are little endian, as in SBE, so the buffer must be too. Flyweights are not thread
+// safe - give each thread its own.
+abstract class MessageFlyweight {
+    ByteBuffer buffer;
+    int offset;
+
+    void wrapBuffer(ByteBuffer buffer, int offset) {
+        if ( buffer.order() != ByteOrder.LITTLE_ENDIAN )
+            throw new IllegalArgumentException("Wire messages are little endian - set the buffer's byte order");
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int offset() {
+        return offset;
+    }
+}
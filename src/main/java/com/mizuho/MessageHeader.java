@@ -0,0 +1,66 @@
+package com.mizuho;
+
+import java.nio.ByteBuffer;
+
+// The header in front of every wire message, laid out as SBE's standard message header:
+//   blockLength(2) templateId(2) schemaId(2) version(2)  - all unsigned
+// blockLength is the length of the message body that follows, so a reader can skip a message
+// it does not know, and templateId says which message it is (each message class has its
+// TEMPLATE_ID). A templateId of 0 is never used, so zero filled space reads as "no message".
+public class MessageHeader extends MessageFlyweight {
+    public static final int ENCODED_LENGTH = 8;
+    public static final int SCHEMA_ID = 1;
+    public static final int SCHEMA_VERSION = 1;
+
+    private static final int BLOCK_LENGTH_OFFSET = 0;
+    private static final int TEMPLATE_ID_OFFSET = 2;
+    private static final int SCHEMA_ID_OFFSET = 4;
+    private static final int VERSION_OFFSET = 6;
+
+    public MessageHeader wrap(ByteBuffer buffer, int offset) {
+        wrapBuffer(buffer, offset);
+        return this;
+    }
+
+    // Writes a header for a message of this schema. The template id is written last - see
+    // CommandJournal for why that matters.
+    public MessageHeader apply(int blockLength, int templateId) {
+        return blockLength(blockLength).schemaId(SCHEMA_ID).version(SCHEMA_VERSION).templateId(templateId);
+    }
+
+    public int blockLength() {
+        return buffer.getShort(offset + BLOCK_LENGTH_OFFSET) & 0xFFFF;
+    }
+
+    public MessageHeader blockLength(int blockLength) {
+        buffer.putShort(offset + BLOCK_LENGTH_OFFSET, (short)blockLength);
+        return this;
+    }
+
+    public int templateId() {
+        return buffer.getShort(offset + TEMPLATE_ID_OFFSET) & 0xFFFF;
+    }
+
+    public MessageHeader templateId(int templateId) {
+        buffer.putShort(offset + TEMPLATE_ID_OFFSET, (short)templateId);
+        return this;
+    }
+
+    public int schemaId() {
+        return buffer.getShort(offset + SCHEMA_ID_OFFSET) & 0xFFFF;
+    }
+
+    public MessageHeader schemaId(int schemaId) {
+        buffer.putShort(offset + SCHEMA_ID_OFFSET, (short)schemaId);
+        return this;
+    }
+
+    public int version() {
+        return buffer.getShort(offset + VERSION_OFFSET) & 0xFFFF;
+    }
+
+    public MessageHeader version(int version) {
+        buffer.putShort(offset + VERSION_OFFSET, (short)version);
+        return this;
+    }
+}
@@ -0,0 +1,41 @@
+package com.mizuho;
+
+import java.nio.ByteBuffer;
+
+// A change to the size of an order, a size of 0 cancelling it (see MessageFlyweight):
+//   id(8) size(8)
+public class ModifyOrderMessage extends MessageFlyweight {
+    public static final int TEMPLATE_ID = 3;
+    public static final int BLOCK_LENGTH = 16;
+
+    private static final int ID_OFFSET = 0;
+    private static final int SIZE_OFFSET = 8;
+
+    public ModifyOrderMessage wrap(ByteBuffer buffer, int offset) {
+        wrapBuffer(buffer, offset);
+        return this;
+    }
+
+    public ModifyOrderMessage wrapAndApplyHeader(ByteBuffer buffer, int offset, MessageHeader header) {
+        header.wrap(buffer, offset).apply(BLOCK_LENGTH, TEMPLATE_ID);
+        return wrap(buffer, offset + MessageHeader.ENCODED_LENGTH);
+    }
+
+    public long id() {
+        return buffer.getLong(offset + ID_OFFSET);
+    }
+
+    public ModifyOrderMessage id(long id) {
+        buffer.putLong(offset + ID_OFFSET, id);
+        return this;
+    }
+
+    public long size() {
+        return buffer.getLong(offset + SIZE_OFFSET);
+    }
+
+    public ModifyOrderMessage size(long size) {
+        buffer.putLong(offset + SIZE_OFFSET, size);
+        return this;
+    }
+}
@@ -0,0 +1,40 @@
+package com.mizuho;
+
+// A bounded free list of objects to be reused rather than left to the garbage collector. Once
+// the pool is full, further objects offered to it are dropped (and collected as usual), so it
+// never holds more than its capacity however many were freed at once, e.g. by a mass cancel.
+//
+// Thread safe. The lock is held for an array read or write, and the pool belongs to one book,
+// so it is rarely contended.
+class ObjectPool<T> {
+    private final Object[] free;
+    private int count; // guarded by this
+
+    ObjectPool(int capacity) {
+        if ( capacity < 0 )
+            throw new IllegalArgumentException("Invalid pool capacity: " + capacity);
+        free = new Object[capacity];
+    }
+
+    // Returns a pooled object, or null if there are none.
+    @SuppressWarnings("unchecked")
+    public synchronized T poll() {
+        if ( count == 0 )
+            return null;
+        T t = (T)free[--count];
+        free[count] = null;
+        return t;
+    }
+
+    // Returns false, and does not keep the object, if the pool is full.
+    public synchronized boolean offer(T t) {
+        if ( count == free.length )
+            return false;
+        free[count++] = t;
+        return true;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+}
@@ -0,0 +1,191 @@
+package com.mizuho;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+// An order book with the same adds, cancels, modifies, matching and queries as OrderBook, whose
+// resting orders live off the Java heap in an OrderSlab and are addressed by slot index. With
+// tens of millions of resting orders OrderBook keeps an OrderHolder per order (plus its entry in
+// the id index) in the old generation, which every full (or mixed) collection has to trace; here
+// the heap holds a handful of primitive arrays however deep the book is, so GC pauses do not grow
+// with it.
+//
+// The price is that it is not thread safe: drive it from one thread (as SingleWriterOrderBook
+// does for OrderBook) and read it on the same thread. It has no journal, listeners other than
+// TradeListener, depth snapshots or latency recording.
+public class OffHeapOrderBook {
+    private static final Logger log = LogManager.getLogger(OffHeapOrderBook.class);
+
+    private final TickSize tickSize;
+    private final OrderSlab slab;
+    private final SlabLadder bidQueue = new SlabLadder(true);
+    private final SlabLadder offerQueue = new SlabLadder(false);
+
+    private final Trade trade = new Trade(); // reused for every fill
+    private TradeListener[] tradeListeners = new TradeListener[0];
+
+    public OffHeapOrderBook() {
+        this(OrderBook.DEFAULT_TICK_SIZE, 0);
+    }
+
+    // expectedOrders sizes the slab and its id index up front, so they need not grow.
+    public OffHeapOrderBook(double tickSize, int expectedOrders) {
+        this.tickSize = new TickSize(tickSize);
+        this.slab = new OrderSlab(expectedOrders);
+    }
+
+    public double getTickSize() {
+        return tickSize.getTickSize();
+    }
+
+    // The number of orders resting on both sides.
+    public int getOrderCount() {
+        return slab.size();
+    }
+
+    public void addTradeListener(TradeListener listener) {
+        TradeListener[] copy = Arrays.copyOf(tradeListeners, tradeListeners.length + 1);
+        copy[copy.length - 1] = listener;
+        tradeListeners = copy;
+    }
+
+    public void addOrder(Order order) throws Exception {
+        long id = order.getId();
+        if ( log.isDebugEnabled() )
+            log.debug("addOrder() called for order id:{}", box(id));
+        if ( order.getSize() <= 0 || order.getPrice() <= 0.0 )
+            throw new Exception("Invalid size or price for order with id: " + id);
+
+        long priceTicks = tickSize.toTicks(order.getPrice());
+        if ( slab.find(id) != OrderSlab.NONE )
+            throw new Exception("OrderBook already contains order with id: " + id);
+        char side = order.getSide();
+        SlabLadder queue = getQueueFromSide(side);
+
+        // Match against the other side first - only what is left over rests in the book.
+        long remaining = match(id, side, priceTicks, order.getSize());
+        if ( remaining > 0 )
+            queue.append(slab, slab.allocate(id, priceTicks, side, remaining, order.getOwner()));
+    }
+
+    public void removeOrder(long id) throws Exception {
+        if ( log.isDebugEnabled() )
+            log.debug("removeOrder() called for order id:{}", box(id));
+        remove(id);
+    }
+
+    public void modifyOrderSize(long id, long size) throws Exception {
+        if ( log.isDebugEnabled() )
+            log.debug("modifyOrderSize() called for order id:{} and size: {}", box(id), box(size));
+        if ( size == 0 ) {
+            remove(id);
+            return;
+        }
+
+        int slot = slab.find(id);
+        if ( slot == OrderSlab.NONE )
+            throw new Exception("Could not find order with id: " + id);
+        SlabLadder queue = getQueueFromSide(slab.getSide(slot));
+        queue.setOrderSize(slab, slot, queue.indexOf(slab.getPriceTicks(slot)), size);
+    }
+
+    public double getPriceForSideAndLevel(char side, int level) throws Exception {
+        SlabLadder queue = getQueueFromSide(side);
+        if ( level < 1 || level > queue.size() )
+            throw new Exception("Level " + level + " does not exist");
+        return tickSize.toPrice(queue.getPriceTicks(level - 1));
+    }
+
+    public long getSizeForSideAndLevel(char side, int level) throws Exception {
+        SlabLadder queue = getQueueFromSide(side);
+        if ( level < 1 || level > queue.size() )
+            throw new Exception("Level " + level + " does not exist");
+        return queue.getTotalSize(level - 1);
+    }
+
+    // Copies the side into new Order objects - forEachOrder() walks it without allocating.
+    public List<Order> getOrdersForSide(char side) throws Exception {
+        List<Order> orders = new ArrayList<>();
+        forEachOrder(side, (id, price, s, size) -> orders.add(new Order(id, price, s, size)));
+        return orders;
+    }
+
+    // Passes each resting order on the side to the visitor, best price first and in time
+    // priority within a price.
+    public void forEachOrder(char side, OrderVisitor visitor) throws Exception {
+        SlabLadder queue = getQueueFromSide(side);
+        for (int level = 0; level < queue.size(); level++) {
+            double price = tickSize.toPrice(queue.getPriceTicks(level));
+            for (int slot = queue.getHead(level); slot != OrderSlab.NONE; slot = slab.getNext(slot))
+                visitor.visit(slab.getId(slot), price, side, slab.getSize(slot));
+        }
+    }
+
+    private void remove(long id) throws Exception {
+        int slot = slab.find(id);
+        if ( slot == OrderSlab.NONE ) {
+            log.warn("removeOrder() did not find order with id:{}", box(id));
+            return;
+        }
+        SlabLadder queue = getQueueFromSide(slab.getSide(slot));
+        queue.unlink(slab, slot, queue.indexOf(slab.getPriceTicks(slot)));
+        slab.free(slot);
+    }
+
+    // As OrderBook.match(): fills the incoming order against the best levels of the opposite side
+    // for as long as they cross its price, oldest order first within each level. Returns the size
+    // left unfilled.
+    private long match(long id, char side, long priceTicks, long size) {
+        SlabLadder opposite = side == 'B' ? offerQueue : bidQueue;
+        long remaining = size;
+        while ( remaining > 0 && opposite.size() > 0 ) {
+            long levelTicks = opposite.getPriceTicks(0);
+            if ( side == 'B' ? levelTicks > priceTicks : levelTicks < priceTicks )
+                break; // no longer crosses
+
+            int passive = opposite.getHead(0);
+            long passiveSize = slab.getSize(passive);
+            long fill = Math.min(remaining, passiveSize);
+            remaining -= fill;
+
+            long passiveId = slab.getId(passive);
+            if ( fill == passiveSize ) {
+                opposite.unlink(slab, passive, 0); // takes the level out once it is empty
+                slab.free(passive);
+            }
+            else {
+                opposite.setOrderSize(slab, passive, 0, passiveSize - fill);
+            }
+            onTrade(id, passiveId, side, levelTicks, fill);
+        }
+        return remaining;
+    }
+
+    private void onTrade(long aggressorId, long passiveId, char aggressorSide, long priceTicks, long size) {
+        TradeListener[] listeners = tradeListeners;
+        if ( listeners.length == 0 )
+            return;
+
+        trade.set(aggressorId, passiveId, aggressorSide, tickSize.toPrice(priceTicks), size);
+        for (TradeListener listener : listeners)
+            listener.onTrade(trade);
+    }
+
+    private SlabLadder getQueueFromSide(char side) throws Exception {
+        if ( side == 'B' ) {
+            return bidQueue;
+        }
+        else if ( side == 'O' ) {
+            return offerQueue;
+        }
+        else {
+            throw new Exception("Unknown side: " + side);
+        }
+    }
+}
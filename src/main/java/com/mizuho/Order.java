@@ -5,12 +5,19 @@ public class Order {
     private double price;
     private char side; // B "Bid" or O "Offer"
     private long size;
+    private long owner; // tag of the session (or trader) the order belongs to, 0 if none
 
     public Order(long id, double price, char side, long size) {
+        this(id, price, side, size, 0);
+    }
+
+    // The owner tag lets all of one session's orders be cancelled at once - see OrderBook.cancelOrdersForOwner().
+    public Order(long id, double price, char side, long size, long owner) {
         this.id = id ;
         this.price = price ;
         this.size = size ;
         this.side = side ;
+        this.owner = owner ;
     }
 
     public long getId() {
@@ -28,4 +35,8 @@ public class Order {
     public char getSide() {
         return side;
     }
+
+    public long getOwner() {
+        return owner;
+    }
 }
\ No newline at end of file
@@ -4,191 +4,1112 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+
+import static org.apache.logging.log4j.util.Unbox.box;
 
 public class OrderBook {
+    // Logging on the hot path is guarded by isDebugEnabled() and uses parameterized messages
+    // with Unbox.box() for primitives, so it allocates nothing when debug is off (no capturing
+    // lambdas, no autoboxing, no string concatenation) and nothing when it is on with the
+    // garbage-free async configuration in log4j2.component.properties.
     private static final Logger log = LogManager.getLogger(OrderBook.class);
 
+    // Used when no tick size is given - prices are then held to the nearest cent.
+    public static final double DEFAULT_TICK_SIZE = 0.01;
+
     // In reality the OrderBook would be per security Id (e.g. ISIN, CUSIP etc.) so we may
-    // wish to store that in this object as well.
-    public OrderBook() {}
+    // wish to store that in this object as well. OrderBookManager keeps one book per instrument.
+    public OrderBook() {
+        this(DEFAULT_TICK_SIZE);
+    }
 
-    // Internal class allowing size to be changed
-    private static class OrderHolder {
-        private final long id; // id of order
-        private final double price;
-        private final char side; // B "Bid" or O "Offer"
-        private final AtomicLong size;
+    // The tick size is a property of the instrument. Prices are held internally as a whole
+    // number of ticks and converted back to doubles only at the edge of the API.
+    public OrderBook(double tickSize) {
+        this.tickSize = new TickSize(tickSize);
+    }
 
-        private OrderHolder(Order order) {
-            this.id = order.getId();
-            this.price = order.getPrice();
-            this.side = order.getSide();
-            this.size = new AtomicLong(order.getSize());
-        }
+    private final TickSize tickSize;
 
-        public long getId() {
-            return id;
-        }
+    public double getTickSize() {
+        return tickSize.getTickSize();
+    }
 
-        public double getPrice() {
-            return price;
-        }
+    TickSize getTickConverter() {
+        return tickSize;
+    }
 
-        public char getSide() {
-            return side;
-        }
+    // Each PriceLevel keeps its orders in an intrusive linked list with head and tail
+    // references, so appending to the tail and unlinking a cancelled order are both O[1].
+    // The PriceLadder keeps the levels sorted best price first, so looking up a level by
+    // its index is O[1] (see PriceLadder for the trade-offs).
+    private final PriceLadder bidQueue = new PriceLadder(true);
+    private final PriceLadder offerQueue = new PriceLadder(false);
 
-        public long getSize() {
-            return size.get();
-        }
+    // No need to sort keys by order here, so we can use a hash index which offers O[1] performance.
+    // It is keyed on the primitive order id, so unlike a ConcurrentHashMap<Long, OrderHolder> it
+    // does not box ids or allocate a node per order.
+    private final ConcurrentLongHashIndex<OrderHolder> mapIdToOrder = new ConcurrentLongHashIndex<>();
 
-        public void setSize(long s) {
-            size.set(s);
-        }
+    // Matching needs a consistent view of the touch on both sides: otherwise a bid and an offer
+    // that cross could be added at the same time, each see no match and both rest, leaving the
+    // book crossed. So adds are serialized on this lock (cancels, modifies and reads are not).
+    private final Object matchLock = new Object();
+    private final Trade trade = new Trade(); // reused for every fill, guarded by matchLock
+
+    // Scratch space for applyBatch(), reused from batch to batch, guarded by matchLock
+    private long[] batchKeys = new long[0];
+    private long[] batchTicks = new long[0];
+    private int[] batchIndex = new int[0];
+    private int[] batchSortSpace = new int[0];
+    private Exception[] batchErrors = new Exception[0];
+    private final LongHashIndex<OrderCommand> batchAdds = new LongHashIndex<>();
+    private volatile TradeListener[] tradeListeners = new TradeListener[0];
+    private volatile LevelListener[] levelListeners = new LevelListener[0];
+    private final OrderEventPublisher orderEvents = new OrderEventPublisher();
+    boolean awaitingFlush; // only used by the OrderBookEventLoop that writes this book
+
+    private volatile CommandJournal journal;
+
+    // Once set, every successful add, cancel and modify is written to the journal before it
+    // changes the book - so if the journal is full the command fails and the book is left as it
+    // was - while holding the lock that orders it against other updates to the same level. An
+    // add is journaled under matchLock before it matches or is indexed, so a cancel or modify of
+    // it is always journaled after it. Replaying the journal into an empty book rebuilds this one
+    // (see CommandJournal.replay()). With concurrent writers, a cancel or modify of an order that
+    // an add is filling, on another thread, may be journaled in a different order to the one it
+    // was applied in - drive the book from a single writer (e.g. SingleWriterOrderBook) when
+    // replay must be exact.
+    public void setJournal(CommandJournal journal) {
+        this.journal = journal;
+    }
+
+    private volatile LatencyRecorder latencyRecorder;
+
+    // When set, the latency of each successful call to the public methods is recorded. When not
+    // set the only cost is a null check.
+    public void setLatencyRecorder(LatencyRecorder latencyRecorder) {
+        this.latencyRecorder = latencyRecorder;
+    }
+
+    // Listeners should be added before the book is in use.
+    public synchronized void addTradeListener(TradeListener listener) {
+        TradeListener[] listeners = Arrays.copyOf(tradeListeners, tradeListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        tradeListeners = listeners;
+    }
+
+    // Listeners should be added before the book is in use, or they will miss the levels that
+    // already exist.
+    public synchronized void addLevelListener(LevelListener listener) {
+        LevelListener[] listeners = Arrays.copyOf(levelListeners, levelListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        levelListeners = listeners;
+    }
+
+    // Order events are delivered in batches of up to the batch size (see OrderEventPublisher),
+    // so call flushEvents() to deliver a part batch. OrderBookEventLoop does that each time it
+    // has applied a run of commands. With a batch size of 1 each event is delivered as it happens.
+    public void addOrderEventListener(OrderEventListener listener) {
+        orderEvents.addListener(listener);
+    }
+
+    public void setOrderEventBatchSize(int batchSize) {
+        orderEvents.setBatchSize(batchSize);
+    }
+
+    public void flushEvents() {
+        orderEvents.flush();
+    }
+
+    boolean hasUnflushedEvents() {
+        return orderEvents.hasPending();
+    }
+
+    private volatile boolean requeueOnSizeIncrease;
+
+    // When set, an order whose size is increased loses its place and goes to the back of its
+    // level's queue, as most exchanges' rules require; a decrease always keeps its place. When
+    // not set (the default) an order keeps its place either way. A book replaying a journal must
+    // use the same setting as the book that wrote it.
+    public void setRequeueOnSizeIncrease(boolean requeueOnSizeIncrease) {
+        this.requeueOnSizeIncrease = requeueOnSizeIncrease;
+    }
+
+    private volatile DepthBuffer depthBuffer;
+    private volatile ObjectPool<OrderHolder> holderPool; // null unless pooling is enabled
+
+    // Keeps a copy of the best `depth` levels of both sides, republished at the end of every
+    // add, cancel and modify, which readDepth() reads without taking any lock (see DepthBuffer).
+    // Unlike getOrdersForSide(), which locks one level at a time, each read is one consistent
+    // view of both sides - as of the end of an update when the book has a single writer (e.g.
+    // SingleWriterOrderBook). With concurrent writers it may include part of another update.
+    public synchronized void enableDepthSnapshots(int depth) {
+        DepthBuffer buffer = new DepthBuffer(depth);
+        buffer.publish(bidQueue, offerQueue);
+        depthBuffer = buffer;
     }
 
-    // The Map declares a <LinkedList> type in the generics (rather than just a List) as
-    // we can then use the addLast() method which has O[1] in Java, as the LinkedList
-    // class maintains a reference to its tail.
-    private final Map<Double, LinkedList<OrderHolder> > bidQueue = new ConcurrentSkipListMap<>(Comparator.reverseOrder());
-    private final Map<Double, LinkedList<OrderHolder> > offerQueue = new ConcurrentSkipListMap<>();
+    // Keeps up to maxPooledOrders removed orders, and up to maxPooledLevels removed price levels
+    // per side, for reuse by later adds instead of allocating new ones, so that once the pools
+    // have filled, adding, cancelling, modifying and filling orders at prices that already have
+    // a level allocates nothing. Creating or removing a level still allocates the ladder's
+    // copy-on-write arrays (see PriceLadder).
+    public synchronized void enablePooling(int maxPooledOrders, int maxPooledLevels) {
+        bidQueue.setPool(new ObjectPool<>(maxPooledLevels));
+        offerQueue.setPool(new ObjectPool<>(maxPooledLevels));
+        holderPool = new ObjectPool<>(maxPooledOrders);
+    }
 
-    // No need to sort keys by order here, so we can use a ConcurrentHashMap which offers O[1] performance
-    private final Map<Long, OrderHolder> mapIdToOrder = new ConcurrentHashMap<>();
+    // Copies the latest depth into topOfBook, unless it already has it, and returns whether it
+    // did. Never blocks, or is blocked by, a writer, and allocates nothing.
+    public boolean readDepth(TopOfBook topOfBook) throws Exception {
+        DepthBuffer buffer = depthBuffer;
+        if ( buffer == null )
+            throw new Exception("Depth snapshots are not enabled");
+        return buffer.read(topOfBook, tickSize);
+    }
 
     public void addOrder(Order order) throws Exception {
-        log.debug(() -> "addOrder() called for order id:" + order.getId());
+        addOrder(order.getId(), order.getPrice(), order.getSide(), order.getSize(), order.getOwner());
+    }
 
-        if ( order.getSize() <= 0 || order.getPrice() <= 0.0 )
-            throw new Exception("Invalid size or price for order with id: " + order.getId());
+    // As addOrder(Order), for callers that already hold the order's fields (e.g. the
+    // event loop applying commands) and so need not allocate an Order.
+    void addOrder(long id, double price, char side, long size, long owner) throws Exception {
+        if ( size <= 0 || price <= 0.0 )
+            throw new Exception("Invalid size or price for order with id: " + id);
 
-        if ( mapIdToOrder.get(order.getId()) != null )
-            throw new Exception("OrderBook already contains order with id: " + order.getId());
+        addOrderTicks(id, tickSize.toTicks(price), side, size, owner);
+    }
+
+    // As addOrder(), with the price already converted to ticks (e.g. when replaying a journal).
+    void addOrderTicks(long id, long priceTicks, char side, long size, long owner) throws Exception {
+        if ( log.isDebugEnabled() )
+            log.debug("addOrder() called for order id:{}", box(id));
+        LatencyRecorder latency = latencyRecorder;
+        long start = latency != null ? System.nanoTime() : 0L;
+
+        if ( size <= 0 || priceTicks <= 0 )
+            throw new Exception("Invalid size or price for order with id: " + id);
+
+        PriceLadder queue = getQueueFromSide(side);
 
-        Map<Double, LinkedList<OrderHolder> > queue = getQueueFromSide(order.getSide());
+        synchronized (matchLock) {
+            // Checked under matchLock, which every add holds, so two adds of the same id cannot
+            // both get past it and both rest.
+            if ( mapIdToOrder.get(id) != null )
+                throw new Exception("OrderBook already contains order with id: " + id);
 
-        OrderHolder orderHolder = new OrderHolder(order);
-        LinkedList<OrderHolder> orders = queue.computeIfAbsent(order.getPrice(), i -> new LinkedList<>());
-        synchronized (orders) {
-            // Java LinkedList offers good performance here as we are always adding to the tail.
-            orders.addLast(orderHolder);
+            // Journaled before anything changes, so that if the journal is full the book is as it
+            // was, and before the order is indexed, so that a cancel or modify of it is always
+            // journaled after it. The command is journaled rather than its effect - replaying it
+            // matches again.
+            journalAdd(id, priceTicks, side, size, owner);
 
-            // This next step is required as a concurrent remove() method may
-            // have just removed the 'orders' list from the map. This is the
-            // trade-off for the finer grained locking.
-            queue.put(order.getPrice(), orders);
+            // Match against the other side first - only what is left over rests in the book.
+            long remaining = match(id, side, priceTicks, size);
+            if ( remaining > 0 )
+                rest(id, priceTicks, side, remaining, owner, queue);
         }
+        publishDepth();
 
-        mapIdToOrder.put(order.getId(), orderHolder);
-        log.debug(() -> "addOrder() exits for order id:" + order.getId());
+        if ( latency != null )
+            latency.record(LatencyRecorder.Operation.ADD_ORDER, start);
+        if ( log.isDebugEnabled() )
+            log.debug("addOrder() exits for order id:{}", box(id));
     }
 
     public void removeOrder(long id) throws Exception {
-        log.debug(() -> "removeOrder() called for order id:" + id);
+        if ( log.isDebugEnabled() )
+            log.debug("removeOrder() called for order id:{}", box(id));
+        LatencyRecorder latency = latencyRecorder;
+        long start = latency != null ? System.nanoTime() : 0L;
 
+        remove(id);
+
+        if ( latency != null )
+            latency.record(LatencyRecorder.Operation.REMOVE_ORDER, start);
+        if ( log.isDebugEnabled() )
+            log.debug("removeOrder() exits for order id:{}", box(id));
+    }
+
+    // removeOrder() without the latency recording, so a modify to zero is only recorded as a modify.
+    private void remove(long id) throws Exception {
         OrderHolder orderHolder = mapIdToOrder.get(id);
-        if ( orderHolder == null ) {
-            log.warn(() -> "removeOrder() did not find order with id:" + id);
-            return;
+        while ( orderHolder != null ) {
+            PriceLevel orders = orderHolder.level;
+            if ( orders != null ) {
+                boolean removed;
+                synchronized (orders) {
+                    // The id is checked in case the holder has been recycled for another order
+                    removed = orderHolder.getId() == id && cancel(orders, orderHolder);
+                    if ( removed )
+                        mapIdToOrder.remove(id);
+                }
+                if ( removed ) {
+                    recycle(orderHolder);
+                    publishDepth();
+                    return;
+                }
+            }
+            orderHolder = reload(id, orderHolder);
         }
+        log.warn("removeOrder() did not find order with id:{}", box(id));
+    }
 
-        Map<Double, LinkedList<OrderHolder> > queue = getQueueFromSide(orderHolder.getSide());
-        List<OrderHolder> orders = queue.get(orderHolder.getPrice());
-        if ( orders != null ) {
-            synchronized (orders) {
-                orders.remove(orderHolder);
-                if (orders.size() == 0) {
-                    // This call below is why the addOrder() method does a final put().
-                    queue.remove(orderHolder.getPrice());
+    // Only the order's own level is locked, so modifies of orders on different levels (and on
+    // different sides) run in parallel with each other and with cancels and matching elsewhere.
+    public void modifyOrderSize(long id, long size) throws Exception {
+        if ( log.isDebugEnabled() )
+            log.debug("modifyOrderSize() called for order id:{} and size: {}", box(id), box(size));
+        LatencyRecorder latency = latencyRecorder;
+        long start = latency != null ? System.nanoTime() : 0L;
+
+        if ( size == 0 ) {
+            if ( log.isDebugEnabled() )
+                log.debug("removing order as it has zero size - order id:{}", box(id));
+            remove(id);
+        }
+        else {
+            modify(id, size);
+        }
+
+        if ( latency != null )
+            latency.record(LatencyRecorder.Operation.MODIFY_ORDER_SIZE, start);
+        if ( log.isDebugEnabled() )
+            log.debug("modifyOrderSize() exits for order id:{} and size: {}", box(id), box(size));
+    }
+
+    private void modify(long id, long size) throws Exception {
+        // The level lock orders this against a concurrent cancel or fill of the same order, and
+        // keeps the level's running total, the journal and the level/order events in step.
+        // The level is read without the lock, so it may be stale, but resize() checks again
+        // under the lock that the order is still on it - a removed order has no level.
+        OrderHolder orderHolder = mapIdToOrder.get(id);
+        while ( orderHolder != null ) {
+            PriceLevel orders = orderHolder.level;
+            if ( orders != null ) {
+                boolean modified;
+                synchronized (orders) {
+                    modified = orderHolder.getId() == id && resize(orders, orderHolder, size);
+                }
+                if ( modified ) {
+                    publishDepth();
+                    return;
                 }
             }
+            orderHolder = reload(id, orderHolder);
         }
-        else {
-            throw new Exception("removeOrder() did not find order with id:" + id);
+        throw new Exception("Could not find order with id: " + id); // Might have already been removed by another thread
+    }
+
+    // Cancels the order and replaces it with one of the given price and size, keeping its id and
+    // side, as one step: no other add, fill or replace can see the book in between, and an order
+    // that moves price is taken off its old level and put on its new one while both levels are
+    // locked. It goes to the back of the queue at its new price, and if that price crosses the
+    // other side it is matched first, like a new order. At the same price this is just a
+    // modifyOrderSize(). It is journaled as a cancel followed by an add.
+    public void replaceOrder(long id, double price, long size) throws Exception {
+        if ( log.isDebugEnabled() )
+            log.debug("replaceOrder() called for order id:{} price: {} and size: {}", box(id), box(price), box(size));
+        LatencyRecorder latency = latencyRecorder;
+        long start = latency != null ? System.nanoTime() : 0L;
+
+        if ( size <= 0 || price <= 0.0 )
+            throw new Exception("Invalid size or price for order with id: " + id);
+        long priceTicks = tickSize.toTicks(price);
+
+        synchronized (matchLock) {
+            OrderHolder orderHolder = mapIdToOrder.get(id);
+            if ( orderHolder == null )
+                throw new Exception("Could not find order with id: " + id);
+
+            if ( priceTicks == orderHolder.getPriceTicks() )
+                modify(id, size);
+            else if ( crosses(orderHolder.getSide(), priceTicks) )
+                cancelAndMatch(orderHolder, priceTicks, size);
+            else
+                move(orderHolder, priceTicks, size);
+        }
+        publishDepth();
+
+        if ( latency != null )
+            latency.record(LatencyRecorder.Operation.REPLACE_ORDER, start);
+        if ( log.isDebugEnabled() )
+            log.debug("replaceOrder() exits for order id:{}", box(id));
+    }
+
+    // The caller must hold matchLock.
+    private void cancelAndMatch(OrderHolder orderHolder, long priceTicks, long size) throws Exception {
+        long id = orderHolder.getId();
+        char side = orderHolder.getSide();
+        PriceLevel from = orderHolder.level;
+        boolean cancelled = false;
+        long owner = orderHolder.getOwner();
+        if ( from != null ) {
+            synchronized (from) {
+                if ( orderHolder.level == from ) {
+                    // The cancel and the add are journaled together before the order leaves its
+                    // level, so a full journal fails the replace with the order still resting.
+                    journalReplace(id, priceTicks, side, size, owner);
+                    unlink(from, orderHolder);
+                    cancelled = true;
+                }
+            }
         }
+        if ( !cancelled )
+            throw new Exception("Could not find order with id: " + id); // Cancelled by another thread
 
-        mapIdToOrder.remove(id);
-        log.debug(() -> "removeOrder() exits for order id:" + id);
+        // The old order stays indexed until it is replaced, so that a removeOrder() meanwhile
+        // finds it gone from its level and waits for us (see reload()) rather than missing the id.
+        long remaining = match(id, side, priceTicks, size);
+        if ( remaining > 0 )
+            rest(id, priceTicks, side, remaining, owner, getQueueFromSide(side));
+        else
+            mapIdToOrder.remove(id);
+        recycle(orderHolder);
     }
 
-    public synchronized void modifyOrderSize(long id, long size) throws Exception {
-        log.debug(() -> "modifyOrderSize() called for order id:" + id + " and size: " + size);
+    // Moves the order to a price where it does not cross, holding both level locks so that it is
+    // never on neither or both of them. Only this takes two level locks, and only under matchLock,
+    // so it cannot deadlock; they are taken lowest price first all the same. The caller must hold
+    // matchLock.
+    private void move(OrderHolder orderHolder, long priceTicks, long size) throws Exception {
+        long id = orderHolder.getId();
+        char side = orderHolder.getSide();
+        PriceLadder queue = getQueueFromSide(side);
+        PriceLevel from = orderHolder.level;
+        if ( from == null )
+            throw new Exception("Could not find order with id: " + id); // Cancelled by another thread
 
-        if ( size == 0 ) {
-            log.debug(() -> "removing order as it has zero size - order id:" + id);
-            removeOrder(id);
+        while ( true ) {
+            PriceLevel to = queue.getOrCreate(priceTicks);
+            PriceLevel first = from.getPriceTicks() < priceTicks ? from : to;
+            PriceLevel second = first == from ? to : from;
+            synchronized (first) {
+                synchronized (second) {
+                    if ( to.isRetired() || to.getPriceTicks() != priceTicks )
+                        continue; // emptied by a cancel since getOrCreate() - see rest()
+
+                    if ( orderHolder.level != from ) {
+                        retireIfEmpty(queue, to); // don't leave behind a level we just created
+                        throw new Exception("Could not find order with id: " + id); // Cancelled by another thread
+                    }
+                    try {
+                        journalReplace(id, priceTicks, side, size, orderHolder.getOwner());
+                    }
+                    catch (Exception e) {
+                        retireIfEmpty(queue, to);
+                        throw e;
+                    }
+                    // Taken from the pool only once the replace is journaled and the old order is
+                    // off its level, so that a failed move has nothing to give back. Linked before
+                    // it is indexed, so that anyone who finds it by id finds it on a level.
+                    unlink(from, orderHolder);
+                    OrderHolder replacement = newHolder(id, priceTicks, side, size, orderHolder.getOwner());
+                    append(to, replacement);
+                    mapIdToOrder.put(id, replacement);
+                    recycle(orderHolder);
+                    return;
+                }
+            }
         }
-        else {
-            OrderHolder orderHolder = mapIdToOrder.get(id);
-            if (orderHolder == null) {
-                throw new Exception("Could not find order with id: " + id); // Might have already been removed by another thread
+    }
+
+    // Cancels every order on the side and returns how many there were.
+    public int cancelAllOrders(char side) throws Exception {
+        return massCancel(getQueueFromSide(side), null, Long.MIN_VALUE, Long.MAX_VALUE, false, 0);
+    }
+
+    // Cancels every order on the side priced from lowPrice to highPrice inclusive, and returns
+    // how many there were.
+    public int cancelOrdersInRange(char side, double lowPrice, double highPrice) throws Exception {
+        if ( lowPrice > highPrice )
+            throw new Exception("Invalid price range: " + lowPrice + " to " + highPrice);
+        return massCancel(getQueueFromSide(side), null, tickSize.toTicks(lowPrice), tickSize.toTicks(highPrice), false, 0);
+    }
+
+    // Cancels every order, on either side, with the given owner tag (see Order), e.g. when its
+    // session disconnects, and returns how many there were. This walks the whole book, as the
+    // orders are not indexed by owner.
+    public int cancelOrdersForOwner(long owner) throws Exception {
+        return massCancel(bidQueue, offerQueue, Long.MIN_VALUE, Long.MAX_VALUE, true, owner);
+    }
+
+    // Each level in range is locked once and all its chosen orders taken off in one walk of its
+    // queue, with one level update for the level rather than one per order. The match lock is
+    // held throughout, so no order added or moved before the call is missed, though cancels and
+    // modifies elsewhere carry on. Each order is still journaled (and has an order event) as a
+    // cancel of its own, so replay and L3 consumers need nothing new, but the order events are
+    // flushed together at the end - as one batch if they fit in the batch size. other may be null.
+    private int massCancel(PriceLadder queue, PriceLadder other, long lowTicks, long highTicks, boolean byOwner, long owner) throws Exception {
+        if ( log.isDebugEnabled() )
+            log.debug("massCancel() called from:{} to:{} owner:{}", box(lowTicks), box(highTicks), box(owner));
+        LatencyRecorder latency = latencyRecorder;
+        long start = latency != null ? System.nanoTime() : 0L;
+
+        int cancelled = 0;
+        try {
+            synchronized (matchLock) {
+                orderEvents.flush(); // so that the cancels start a batch of their own
+                cancelled += cancelOnSide(queue, lowTicks, highTicks, byOwner, owner);
+                if ( other != null )
+                    cancelled += cancelOnSide(other, lowTicks, highTicks, byOwner, owner);
             }
+        }
+        catch (Exception e) {
+            // A full journal stopped the pass part way - publish the cancels it did make
+            orderEvents.flush();
+            publishDepth();
+            throw e;
+        }
+        if ( cancelled > 0 ) {
+            orderEvents.flush();
+            publishDepth();
+        }
+
+        if ( latency != null )
+            latency.record(LatencyRecorder.Operation.MASS_CANCEL, start);
+        if ( log.isDebugEnabled() )
+            log.debug("massCancel() cancelled {} orders", box(cancelled));
+        return cancelled;
+    }
 
-            orderHolder.setSize(size);
+    // The caller must hold matchLock.
+    private int cancelOnSide(PriceLadder queue, long lowTicks, long highTicks, boolean byOwner, long owner) throws Exception {
+        char side = queue == bidQueue ? 'B' : 'O';
+        int cancelled = 0;
+        for (PriceLevel orders : queue.getLevels()) {
+            long ticks = orders.getPriceTicks();
+            if ( ticks < lowTicks || ticks > highTicks )
+                continue;
+            synchronized (orders) {
+                cancelled += cancelMatching(queue, orders, side, byOwner, owner);
+            }
         }
+        return cancelled;
+    }
 
-        log.debug(() -> "modifyOrderSize() exits for order id:" + id + " and size: " + size);
+    // Takes every order (or every one with the owner) off the level, in one walk from the head.
+    // The queue position of each is the number of orders kept ahead of it. Each cancel is
+    // journaled before its order is taken off, so if the journal fills part way the orders
+    // already cancelled are exactly those journaled, and the level is still updated for them.
+    // The caller must hold matchLock and the level lock.
+    private int cancelMatching(PriceLadder queue, PriceLevel orders, char side, boolean byOwner, long owner) throws Exception {
+        if ( orders.isRetired() )
+            return 0; // emptied since we took the ladder's levels
+
+        double price = tickSize.toPrice(orders.getPriceTicks());
+        CommandJournal journal = this.journal;
+        boolean events = orderEvents.hasListeners();
+        int cancelled = 0;
+        int kept = 0;
+        OrderHolder orderHolder = orders.getHead();
+        try {
+            while ( orderHolder != null ) {
+                OrderHolder next = orderHolder.next;
+                if ( byOwner && orderHolder.getOwner() != owner ) {
+                    kept++;
+                }
+                else {
+                    if ( journal != null )
+                        journal.appendCancel(orderHolder.getId());
+                    if ( events )
+                        orderEvents.publish(OrderEvent.Type.CANCEL, orderHolder.getId(), price, side, orderHolder.getSize(), 0, kept);
+                    orders.remove(orderHolder);
+                    mapIdToOrder.remove(orderHolder.getId());
+                    recycle(orderHolder);
+                    cancelled++;
+                }
+                orderHolder = next;
+            }
+        }
+        finally {
+            if ( cancelled > 0 ) {
+                onLevelUpdate(orders.isEmpty() ? LevelListener.Action.DELETE : LevelListener.Action.CHANGE, side, orders);
+                retireIfEmpty(queue, orders);
+            }
+        }
+        return cancelled;
     }
 
     public double getPriceForSideAndLevel(char side, int level) throws Exception {
-        log.debug(() -> "getPriceForSideAndLevel() called for side:" + side + " and level: " + level);
-        Map<Double, LinkedList<OrderHolder> > queue = getQueueFromSide(side);
-
-        // ConcurrentSkipListMap will give a consistent snapshot at the time the keySet()
-        // is created.
-        Double[] prices = queue.keySet().toArray(new Double[0]);
-        if ( prices.length < level )
+        if ( log.isDebugEnabled() )
+            log.debug("getPriceForSideAndLevel() called for side:{} and level: {}", box(side), box(level));
+        LatencyRecorder latency = latencyRecorder;
+        long start = latency != null ? System.nanoTime() : 0L;
+        PriceLevel orders = getQueueFromSide(side).getLevel(level - 1);
+        if ( orders == null )
             throw new Exception("Level " + level + " does not exist");
 
-        log.debug(() -> "getPriceForSideAndLevel() returns: " + prices[level-1]);
-        return prices[level-1];
+        double price = tickSize.toPrice(orders.getPriceTicks());
+        if ( latency != null )
+            latency.record(LatencyRecorder.Operation.GET_PRICE_FOR_SIDE_AND_LEVEL, start);
+        if ( log.isDebugEnabled() )
+            log.debug("getPriceForSideAndLevel() returns: {}", box(price));
+        return price;
     }
 
     public long getSizeForSideAndLevel(char side, int level) throws Exception {
-        log.debug(() -> "getSizeForSideAndLevel() called for side:" + side + " and level: " + level);
-        Map<Double, LinkedList<OrderHolder> > queue = getQueueFromSide(side);
-
-        double price = getPriceForSideAndLevel(side, level);
-        LinkedList<OrderHolder> orders = queue.get(price);
+        if ( log.isDebugEnabled() )
+            log.debug("getSizeForSideAndLevel() called for side:{} and level: {}", box(side), box(level));
+        LatencyRecorder latency = latencyRecorder;
+        long start = latency != null ? System.nanoTime() : 0L;
+        PriceLevel orders = getQueueFromSide(side).getLevel(level - 1);
         if ( orders == null )
-            throw new Exception("Could not find size for side: " + side + " and level: " + level);
+            throw new Exception("Level " + level + " does not exist");
 
-        long sum;
-        synchronized (orders) {
-            sum = orders.stream().mapToLong(OrderHolder::getSize).sum();
-        }
+        // The level keeps a running total, so there is no need to lock it or walk its orders.
+        long total = orders.getTotalSize();
 
-        log.debug(() -> "getSizeForSideAndLevel() returns: " + sum);
-        return sum;
+        if ( latency != null )
+            latency.record(LatencyRecorder.Operation.GET_SIZE_FOR_SIDE_AND_LEVEL, start);
+        if ( log.isDebugEnabled() )
+            log.debug("getSizeForSideAndLevel() returns: {}", box(total));
+        return total;
     }
 
 
+    // Copies the side into new Order objects - forEachOrder() walks it without allocating.
     public List<Order> getOrdersForSide(char side) throws Exception {
-        Map<Double, LinkedList<OrderHolder> > queue = getQueueFromSide(side);
+        LatencyRecorder latency = latencyRecorder;
+        long start = latency != null ? System.nanoTime() : 0L;
 
         List<Order> rv = new LinkedList<>();
+        visitOrders(side, (id, price, s, size) -> rv.add(new Order(id, price, s, size)));
+
+        if ( latency != null )
+            latency.record(LatencyRecorder.Operation.GET_ORDERS_FOR_SIDE, start);
+        return rv;
+    }
+
+    // Passes each resting order on the side to the visitor, best price first and in time
+    // priority within a price. Each level is visited under its lock, so the orders of a level
+    // are consistent with each other, but other levels may change while the walk is in progress.
+    public void forEachOrder(char side, OrderVisitor visitor) throws Exception {
+        LatencyRecorder latency = latencyRecorder;
+        long start = latency != null ? System.nanoTime() : 0L;
+
+        visitOrders(side, visitor);
+
+        if ( latency != null )
+            latency.record(LatencyRecorder.Operation.FOR_EACH_ORDER, start);
+    }
+
+    private void visitOrders(char side, OrderVisitor visitor) throws Exception {
+        PriceLadder queue = getQueueFromSide(side);
 
         // Our container classes will have done all the hard work for us....
-        queue.forEach((key, value) -> {
-                    if (value != null) {
-                        synchronized (value) {
-                            rv.addAll(value.stream()
-                                            .map(o -> new Order(o.getId(), o.getPrice(), o.getSide(), o.getSize()))
-                                            .collect(Collectors.toList()));
+        for (PriceLevel value : queue.getLevels()) {
+            long ticks = value.getPriceTicks();
+            synchronized (value) {
+                // Emptied since we took the array, or reused for another price as we locked it
+                // (with pooling) - its orders, if any, are not the ones we came for
+                if ( value.isRetired() || value.getPriceTicks() != ticks )
+                    continue;
+                double price = tickSize.toPrice(value.getPriceTicks());
+                for (OrderHolder o = value.getHead(); o != null; o = o.next)
+                    visitor.visit(o.getId(), price, side, o.getSize());
+            }
+        }
+    }
+
+    public int applyBatch(OrderCommand[] commands) throws Exception {
+        return applyBatch(commands, commands.length, null);
+    }
+
+    // Applies the first count commands with the same result as applying them one at a time in
+    // order, but cheaper: when no add in the batch can match (against the book or another add in
+    // the batch), no id is added twice and every cancel and modify is of an order in the book or
+    // added earlier in the batch, the commands are grouped by side and price level -
+    // keeping their order within each level - and each level is locked once for its whole group,
+    // under a single hold of the match lock, with one depth update for the batch. Otherwise they
+    // are simply applied one at a time. The commands are journaled in the order they were applied.
+    //
+    // Commands that fail do not stop the batch. The callback, if given, is told the outcome of
+    // every command, in the order they were given, once all of them have been applied; without
+    // one, failures are logged. It is called while the match lock is still held, so like a
+    // TradeListener it should be quick, and it must not apply another batch to this book.
+    // Returns the number of commands that succeeded.
+    public int applyBatch(OrderCommand[] commands, int count, CommandCallback callback) throws Exception {
+        if ( log.isDebugEnabled() )
+            log.debug("applyBatch() called for {} commands", box(count));
+        LatencyRecorder latency = latencyRecorder;
+        long start = latency != null ? System.nanoTime() : 0L;
+
+        int failed = 0;
+        synchronized (matchLock) {
+            ensureBatchSpace(count);
+            Exception[] errors = batchErrors;
+            try {
+                if ( prepareBatch(commands, count) ) {
+                    sortBatch(count);
+                    applyGroups(commands, count);
+                    publishDepth();
+                }
+                else {
+                    for (int i = 0; i < count; i++) {
+                        try {
+                            commands[i].applyTo(this);
+                        }
+                        catch (Exception e) {
+                            errors[i] = e;
                         }
                     }
                 }
-        );
 
-        return rv;
+                for (int i = 0; i < count; i++) {
+                    Exception error = errors[i];
+                    if ( error != null )
+                        failed++;
+                    if ( callback != null )
+                        callback.onComplete(commands[i].getId(), error);
+                    else if ( error != null )
+                        log.warn("Batch command failed for order id:{} - {}", box(commands[i].getId()), error.getMessage());
+                }
+            }
+            finally {
+                batchAdds.clear();
+                Arrays.fill(errors, 0, count, null); // also if the callback threw
+            }
+        }
+
+        if ( latency != null )
+            latency.record(LatencyRecorder.Operation.APPLY_BATCH, start);
+        if ( log.isDebugEnabled() )
+            log.debug("applyBatch() exits with {} of {} commands failed", box(failed), box(count));
+        return count - failed;
+    }
+
+    // Works out the level each command applies to, as a key of price ticks and side. Returns
+    // false if the batch cannot be grouped. Invalid adds, which are bound to fail wherever they
+    // come, get a key of Long.MAX_VALUE, so they are applied last, one at a time. A cancel or
+    // modify of an order that is neither in the book nor added earlier in the batch cannot be
+    // given a level - an add later in the batch might create it, and the cancel or modify must
+    // still miss - so it makes the batch fall back to one at a time. The caller must hold matchLock.
+    private boolean prepareBatch(OrderCommand[] commands, int count) throws Exception {
+        long bestOffer = bestTicks(offerQueue, Long.MAX_VALUE);
+        long bestBid = bestTicks(bidQueue, Long.MIN_VALUE);
+        long highestBidAdd = Long.MIN_VALUE;
+        long lowestOfferAdd = Long.MAX_VALUE;
+
+        for (int i = 0; i < count; i++) {
+            OrderCommand command = commands[i];
+            long key = Long.MAX_VALUE;
+            if ( command.getType() == OrderCommand.Type.ADD ) {
+                long id = command.getId();
+                if ( mapIdToOrder.get(id) != null || batchAdds.putIfAbsent(id, command) != null )
+                    return false; // which add fails would depend on order
+
+                char side = command.getSide();
+                long ticks;
+                try {
+                    ticks = tickSize.toTicks(command.getPrice());
+                }
+                catch (Exception e) {
+                    ticks = 0; // off tick
+                }
+                if ( command.getSize() > 0 && command.getPrice() > 0.0 && ticks > 0 && (side == 'B' || side == 'O') ) {
+                    if ( side == 'B' ? ticks >= bestOffer : ticks <= bestBid )
+                        return false; // would match
+                    if ( side == 'B' )
+                        highestBidAdd = Math.max(highestBidAdd, ticks);
+                    else
+                        lowestOfferAdd = Math.min(lowestOfferAdd, ticks);
+                    batchTicks[i] = ticks;
+                    key = levelKey(ticks, side);
+                }
+                else {
+                    batchAdds.remove(id); // will fail, so is not added
+                }
+            }
+            else {
+                OrderHolder orderHolder = mapIdToOrder.get(command.getId());
+                OrderCommand add = batchAdds.get(command.getId());
+                if ( orderHolder == null && add == null )
+                    return false; // must miss, even if an add later in the batch creates it
+                if ( orderHolder != null ) {
+                    PriceLevel orders = orderHolder.level;
+                    if ( orders != null ) {
+                        batchTicks[i] = orders.getPriceTicks();
+                        key = levelKey(orders.getPriceTicks(), orderHolder.getSide());
+                    }
+                }
+                else {
+                    // Added earlier in this batch, at a price where it rests in full
+                    batchTicks[i] = tickSize.toTicks(add.getPrice());
+                    key = levelKey(batchTicks[i], add.getSide());
+                }
+            }
+            batchKeys[i] = key;
+        }
+        return highestBidAdd < lowestOfferAdd;
+    }
+
+    // Applies the sorted batch a level at a time. The caller must hold matchLock.
+    private void applyGroups(OrderCommand[] commands, int count) throws Exception {
+        int[] index = batchIndex;
+        int i = 0;
+        while ( i < count ) {
+            long key = batchKeys[index[i]];
+            int end = i + 1;
+            boolean adds = commands[index[i]].getType() == OrderCommand.Type.ADD;
+            while ( end < count && batchKeys[index[end]] == key ) {
+                adds |= commands[index[end]].getType() == OrderCommand.Type.ADD;
+                end++;
+            }
+
+            if ( key == Long.MAX_VALUE ) {
+                applyEach(commands, index, i, end);
+            }
+            else {
+                char side = (key & 1) != 0 ? 'B' : 'O';
+                long ticks = batchTicks[index[i]];
+                PriceLadder queue = getQueueFromSide(side);
+                int next = i;
+                while ( next < end ) {
+                    PriceLevel orders = adds ? queue.getOrCreate(ticks) : queue.get(ticks);
+                    if ( orders == null ) {
+                        applyEach(commands, index, next, end); // its orders have all gone
+                        break;
+                    }
+                    synchronized (orders) {
+                        // If a cancel empties the level it is retired, and any add after it
+                        // needs a fresh level, so go round again
+                        while ( next < end && !orders.isRetired() && orders.getPriceTicks() == ticks ) {
+                            applyToLevel(commands[index[next]], index[next], orders, ticks, side);
+                            next++;
+                        }
+                        retireIfEmpty(queue, orders);
+                    }
+                }
+            }
+            i = end;
+        }
+    }
+
+    // A command that fails - e.g. because the journal is full - has its error recorded and leaves
+    // the level as it was, as it would applied on its own. The caller must hold matchLock and the
+    // level lock.
+    private void applyToLevel(OrderCommand command, int i, PriceLevel orders, long ticks, char side) {
+        long id = command.getId();
+        try {
+            switch (command.getType()) {
+                case ADD: {
+                    journalAdd(id, ticks, side, command.getSize(), command.getOwner());
+                    OrderHolder orderHolder = newHolder(id, ticks, side, command.getSize(), command.getOwner());
+                    append(orders, orderHolder);
+                    mapIdToOrder.put(id, orderHolder);
+                    break;
+                }
+                case CANCEL:
+                    cancelOnLevel(orders, id);
+                    break;
+                case MODIFY:
+                    if ( command.getSize() == 0 ) {
+                        cancelOnLevel(orders, id);
+                    }
+                    else {
+                        OrderHolder orderHolder = mapIdToOrder.get(id);
+                        if ( orderHolder == null || !resize(orders, orderHolder, command.getSize()) )
+                            batchErrors[i] = new Exception("Could not find order with id: " + id);
+                    }
+                    break;
+            }
+        }
+        catch (Exception e) {
+            batchErrors[i] = e;
+        }
+    }
+
+    // As remove(), for an order known to be on the (locked) level, if it is still there.
+    private void cancelOnLevel(PriceLevel orders, long id) throws Exception {
+        OrderHolder orderHolder = mapIdToOrder.get(id);
+        if ( orderHolder != null && cancel(orders, orderHolder) ) {
+            mapIdToOrder.remove(id);
+            recycle(orderHolder);
+        }
+        else
+            log.warn("removeOrder() did not find order with id:{}", box(id));
+    }
+
+    private void applyEach(OrderCommand[] commands, int[] index, int from, int to) {
+        for (int j = from; j < to; j++) {
+            try {
+                commands[index[j]].applyTo(this);
+            }
+            catch (Exception e) {
+                batchErrors[index[j]] = e;
+            }
+        }
+    }
+
+    // Sorts batchIndex by level key, keeping the original order within a level (a merge sort, as
+    // that is stable and needs no boxing).
+    private void sortBatch(int count) {
+        int[] index = batchIndex;
+        for (int i = 0; i < count; i++)
+            index[i] = i;
+
+        int[] from = index;
+        int[] to = batchSortSpace;
+        for (int width = 1; width < count; width <<= 1) {
+            for (int low = 0; low < count; low += width << 1) {
+                int mid = Math.min(low + width, count);
+                int high = Math.min(low + (width << 1), count);
+                int a = low;
+                int b = mid;
+                for (int k = low; k < high; k++) {
+                    if ( a < mid && (b >= high || batchKeys[from[a]] <= batchKeys[from[b]]) )
+                        to[k] = from[a++];
+                    else
+                        to[k] = from[b++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if ( from != index )
+            System.arraycopy(from, 0, index, 0, count);
+    }
+
+    private void ensureBatchSpace(int count) {
+        if ( batchKeys.length < count ) {
+            int capacity = Math.max(count, batchKeys.length << 1);
+            batchKeys = new long[capacity];
+            batchTicks = new long[capacity];
+            batchIndex = new int[capacity];
+            batchSortSpace = new int[capacity];
+            batchErrors = new Exception[capacity];
+        }
+    }
+
+    // The side is in the low bit so that the bids and the offers at one price are different levels.
+    private static long levelKey(long priceTicks, char side) {
+        return (priceTicks << 1) | (side == 'B' ? 1 : 0);
+    }
+
+    private static long bestTicks(PriceLadder queue, long none) {
+        PriceLevel best = queue.getLevel(0);
+        return best != null ? best.getPriceTicks() : none;
+    }
+
+    // Fills the incoming order against the best levels of the opposite side for as long as
+    // they cross its price, oldest order first within each level (price-time priority).
+    // Returns the size left unfilled. The caller must hold matchLock.
+    private long match(long id, char side, long priceTicks, long size) {
+        PriceLadder opposite = side == 'B' ? offerQueue : bidQueue;
+        long remaining = size;
+        while ( remaining > 0 ) {
+            PriceLevel orders = opposite.getLevel(0);
+            if ( orders == null )
+                break;
+
+            long levelTicks = orders.getPriceTicks();
+            if ( side == 'B' ? levelTicks > priceTicks : levelTicks < priceTicks )
+                break; // no longer crosses
+
+            synchronized (orders) {
+                OrderHolder passive = orders.getHead();
+                while ( passive != null && remaining > 0 ) {
+                    OrderHolder next = passive.next;
+                    long fill = Math.min(remaining, passive.getSize());
+                    long left = passive.getSize() - fill;
+                    remaining -= fill;
+
+                    if ( left == 0 ) {
+                        orders.remove(passive);
+                        mapIdToOrder.remove(passive.getId());
+                    }
+                    else {
+                        orders.setOrderSize(passive, left);
+                    }
+
+                    onTrade(id, passive.getId(), side, levelTicks, fill);
+                    if ( orderEvents.hasListeners() ) // the passive order is always at the head
+                        orderEvents.publish(OrderEvent.Type.EXECUTE, passive.getId(), tickSize.toPrice(levelTicks), passive.getSide(), left, fill, 0);
+                    if ( left == 0 )
+                        recycle(passive);
+                    passive = next;
+                }
+                // One update for all the fills at this level
+                onLevelUpdate(orders.isEmpty() ? LevelListener.Action.DELETE : LevelListener.Action.CHANGE, side == 'B' ? 'O' : 'B', orders);
+                retireIfEmpty(opposite, orders);
+            }
+        }
+        return remaining;
+    }
+
+    private void onTrade(long aggressorId, long passiveId, char aggressorSide, long priceTicks, long size) {
+        TradeListener[] listeners = tradeListeners;
+        if ( listeners.length == 0 )
+            return;
+
+        trade.set(aggressorId, passiveId, aggressorSide, tickSize.toPrice(priceTicks), size);
+        for (TradeListener listener : listeners)
+            listener.onTrade(trade);
+    }
+
+    // The caller must hold the level lock, which keeps the updates for a level in order.
+    private void onLevelUpdate(LevelListener.Action action, char side, PriceLevel orders) {
+        LevelListener[] listeners = levelListeners;
+        if ( listeners.length == 0 )
+            return;
+
+        double price = tickSize.toPrice(orders.getPriceTicks());
+        for (LevelListener listener : listeners)
+            listener.onLevelUpdate(action, side, price, orders.getTotalSize(), orders.getOrderCount());
+    }
+
+    // Adds what is left of an incoming order to the back of its level. The caller must hold
+    // matchLock, and must have journaled the add.
+    private void rest(long id, long priceTicks, char side, long size, long owner, PriceLadder queue) {
+        OrderHolder orderHolder = null;
+        while ( orderHolder == null ) {
+            PriceLevel orders = queue.getOrCreate(priceTicks);
+            synchronized (orders) {
+                // A concurrent removeOrder() may have just emptied this level and taken it out
+                // of the ladder, in which case we go round again and get a fresh level. This is
+                // the trade-off for the finer grained locking. With pooling the retired level
+                // may even have been reused for another price.
+                if ( !orders.isRetired() && orders.getPriceTicks() == priceTicks ) {
+                    orderHolder = newHolder(id, priceTicks, side, size, owner);
+                    append(orders, orderHolder);
+                }
+            }
+        }
+
+        mapIdToOrder.put(id, orderHolder);
+    }
+
+    // The caller must hold the level lock, and must have journaled the add before the order can
+    // be found by id.
+    private void append(PriceLevel orders, OrderHolder orderHolder) {
+        boolean newLevel = orders.isEmpty();
+        orders.addLast(orderHolder);
+        if ( orderEvents.hasListeners() )
+            orderEvents.publish(OrderEvent.Type.ADD, orderHolder.getId(), tickSize.toPrice(orders.getPriceTicks()), orderHolder.getSide(),
+                    orderHolder.getSize(), 0, orders.getOrderCount() - 1);
+        onLevelUpdate(newLevel ? LevelListener.Action.NEW : LevelListener.Action.CHANGE, orderHolder.getSide(), orders);
+    }
+
+    private void journalAdd(long id, long priceTicks, char side, long size, long owner) throws Exception {
+        CommandJournal journal = this.journal;
+        if ( journal != null )
+            journal.appendAdd(id, priceTicks, side, size, owner);
+    }
+
+    private void journalReplace(long id, long priceTicks, char side, long size, long owner) throws Exception {
+        CommandJournal journal = this.journal;
+        if ( journal != null )
+            journal.appendReplace(id, priceTicks, side, size, owner);
+    }
+
+    // Takes the order off its level - O[1], no scan of the level is needed - with its journal
+    // record, order event and level update, and retires the level if that emptied it. Returns
+    // false if the order is no longer on the level. The record is written before anything
+    // changes, so if the journal is full the book is left as it was. The caller must hold the
+    // level lock.
+    private boolean cancel(PriceLevel orders, OrderHolder orderHolder) throws Exception {
+        if ( orderHolder.level != orders )
+            return false;
+
+        CommandJournal journal = this.journal;
+        if ( journal != null )
+            journal.appendCancel(orderHolder.getId());
+        unlink(orders, orderHolder);
+        return true;
+    }
+
+    // As cancel(), for an order known to be on the level, without journaling it.
+    private void unlink(PriceLevel orders, OrderHolder orderHolder) {
+        // Finding the queue position means a scan of the level, so only when it is wanted
+        if ( orderEvents.hasListeners() )
+            orderEvents.publish(OrderEvent.Type.CANCEL, orderHolder.getId(), tickSize.toPrice(orders.getPriceTicks()), orderHolder.getSide(),
+                    orderHolder.getSize(), 0, orders.positionOf(orderHolder));
+
+        orders.remove(orderHolder);
+        onLevelUpdate(orders.isEmpty() ? LevelListener.Action.DELETE : LevelListener.Action.CHANGE, orderHolder.getSide(), orders);
+        retireIfEmpty(orderHolder.getSide() == 'B' ? bidQueue : offerQueue, orders);
+    }
+
+    // Changes the order's size, moving it to the back of the queue if it has grown and
+    // requeueOnSizeIncrease is set. Returns false if the order is no longer on the level. As in
+    // cancel(), the record is written before anything changes. The caller must hold the level lock.
+    private boolean resize(PriceLevel orders, OrderHolder orderHolder, long size) throws Exception {
+        if ( orderHolder.level != orders )
+            return false;
+
+        CommandJournal journal = this.journal;
+        if ( journal != null )
+            journal.appendModify(orderHolder.getId(), size);
+
+        long oldSize = orderHolder.getSize();
+        orders.setOrderSize(orderHolder, size);
+        boolean requeued = requeueOnSizeIncrease && size > oldSize;
+        if ( requeued )
+            orders.moveToTail(orderHolder);
+        if ( orderEvents.hasListeners() )
+            orderEvents.publish(OrderEvent.Type.MODIFY, orderHolder.getId(), tickSize.toPrice(orders.getPriceTicks()), orderHolder.getSide(),
+                    size, 0, requeued ? orders.getOrderCount() - 1 : orders.positionOf(orderHolder));
+        onLevelUpdate(LevelListener.Action.CHANGE, orderHolder.getSide(), orders);
+        return true;
+    }
+
+    // Called when the order under an id has been taken off its level by another thread. Fills and
+    // replaces hold matchLock, so once we have it any that was in progress has finished. Returns
+    // the order now under the id if it has been replaced, otherwise null.
+    private OrderHolder reload(long id, OrderHolder removed) {
+        synchronized (matchLock) {
+            OrderHolder current = mapIdToOrder.get(id);
+            return current != removed ? current : null;
+        }
+    }
+
+    // Whether an order at this price would match the best order on the other side. The caller
+    // must hold matchLock, so that nothing can come to rest on the other side meanwhile.
+    private boolean crosses(char side, long priceTicks) {
+        PriceLevel best = (side == 'B' ? offerQueue : bidQueue).getLevel(0);
+        if ( best == null )
+            return false;
+        return side == 'B' ? best.getPriceTicks() <= priceTicks : best.getPriceTicks() >= priceTicks;
+    }
+
+    private OrderHolder newHolder(long id, long priceTicks, char side, long size, long owner) {
+        ObjectPool<OrderHolder> pool = holderPool;
+        OrderHolder orderHolder = pool != null ? pool.poll() : null;
+        if ( orderHolder == null )
+            return new OrderHolder(id, priceTicks, side, size, owner);
+        orderHolder.reset(id, priceTicks, side, size, owner);
+        return orderHolder;
+    }
+
+    // Returns a holder to the pool once it is off its level and out of the index.
+    private void recycle(OrderHolder orderHolder) {
+        ObjectPool<OrderHolder> pool = holderPool;
+        if ( pool != null )
+            pool.offer(orderHolder);
+    }
+
+    private void publishDepth() {
+        DepthBuffer buffer = depthBuffer;
+        if ( buffer != null )
+            buffer.publish(bidQueue, offerQueue);
+    }
+
+    // Takes an emptied level out of its ladder. The caller must hold the level lock.
+    private void retireIfEmpty(PriceLadder queue, PriceLevel orders) {
+        if ( orders.isEmpty() && !orders.isRetired() ) {
+            // This is why addOrder() checks isRetired() once it holds the level lock.
+            orders.retire();
+            queue.remove(orders);
+        }
     }
 
     // Get the bid or the offer queue.
-    private Map<Double, LinkedList<OrderHolder> > getQueueFromSide(char side) throws Exception {
+    PriceLadder getQueueFromSide(char side) throws Exception {
         if ( side == 'B' ) {
             return bidQueue;
         }
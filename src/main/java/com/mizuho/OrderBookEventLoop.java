@@ -0,0 +1,201 @@
+package com.mizuho;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+// A single consumer thread that applies OrderCommands to OrderBooks. Any number of threads
+// may publish commands, through a preallocated lock-free CommandRingBuffer, but only this
+// thread ever mutates the books it is given, so their locks are never contended and the
+// order in which commands are applied is the order in which they were claimed.
+//
+// Java has no portable way to pin a thread to a core, so a ThreadFactory may be supplied
+// that does (e.g. using an affinity library). The consumer busy spins while idle for
+// SPIN_TRIES polls before backing off to parkNanos(), so it uses a whole core when busy.
+//
+// Each run of up to BATCH_LIMIT commands is followed by OrderBook.flushEvents() on the books
+// it changed, so their OrderEventListeners get one batch per run rather than one call per change.
+public class OrderBookEventLoop implements AutoCloseable {
+    private static final Logger log = LogManager.getLogger(OrderBookEventLoop.class);
+
+    public static final int DEFAULT_RING_SIZE = 1 << 16;
+    private static final int BATCH_LIMIT = 256;
+    private static final int SPIN_TRIES = 10_000;
+    private static final long IDLE_PARK_NANOS = 50_000;
+
+    private final CommandRingBuffer ring;
+    private final Thread thread;
+    private final Consumer<OrderCommand> handler = this::apply;
+    private final List<OrderBook> unflushed = new ArrayList<>(); // books with order events to flush
+    private volatile boolean running = true;
+
+    public OrderBookEventLoop(String name) {
+        this(name, DEFAULT_RING_SIZE, Thread::new);
+    }
+
+    // ringSize must be a power of two.
+    public OrderBookEventLoop(String name, int ringSize, ThreadFactory threadFactory) {
+        this.ring = new CommandRingBuffer(ringSize);
+        this.thread = threadFactory.newThread(this::run);
+        this.thread.setName(name);
+        this.thread.start();
+    }
+
+    public void addOrder(OrderBook book, Order order, CommandCallback callback) {
+        long sequence = ring.claim();
+        ring.getCommand(sequence).setAdd(order);
+        publish(sequence, book, callback, null);
+    }
+
+    public CompletableFuture<Void> addOrder(OrderBook book, Order order) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        long sequence = ring.claim();
+        ring.getCommand(sequence).setAdd(order);
+        publish(sequence, book, null, future);
+        return future;
+    }
+
+    public void removeOrder(OrderBook book, long id, CommandCallback callback) {
+        long sequence = ring.claim();
+        ring.getCommand(sequence).setCancel(id);
+        publish(sequence, book, callback, null);
+    }
+
+    public CompletableFuture<Void> removeOrder(OrderBook book, long id) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        long sequence = ring.claim();
+        ring.getCommand(sequence).setCancel(id);
+        publish(sequence, book, null, future);
+        return future;
+    }
+
+    public void modifyOrderSize(OrderBook book, long id, long size, CommandCallback callback) {
+        long sequence = ring.claim();
+        ring.getCommand(sequence).setModify(id, size);
+        publish(sequence, book, callback, null);
+    }
+
+    public CompletableFuture<Void> modifyOrderSize(OrderBook book, long id, long size) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        long sequence = ring.claim();
+        ring.getCommand(sequence).setModify(id, size);
+        publish(sequence, book, null, future);
+        return future;
+    }
+
+    // Runs the task on the event loop thread, after every command already published and before
+    // any published later - e.g. to take a consistent snapshot of a book it writes to.
+    public CompletableFuture<Void> execute(OrderBook book, BookTask task) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        long sequence = ring.claim();
+        ring.getCommand(sequence).task = task;
+        publish(sequence, book, null, future);
+        return future;
+    }
+
+    // Stops the consumer once every command published so far has been applied.
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void publish(long sequence, OrderBook book, CommandCallback callback, CompletableFuture<Void> future) {
+        OrderCommand command = ring.getCommand(sequence);
+        command.book = book;
+        command.callback = callback;
+        command.future = future;
+        ring.publish(sequence);
+    }
+
+    private void run() {
+        int idle = 0;
+        while ( running || !ring.isEmpty() ) {
+            if ( ring.drain(handler, BATCH_LIMIT) > 0 ) {
+                flushEvents();
+                idle = 0;
+            }
+            else if ( ++idle < SPIN_TRIES ) {
+                Thread.onSpinWait();
+            }
+            else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private void apply(OrderCommand command) {
+        OrderBook book = command.book;
+        Exception error = null;
+        try {
+            if ( command.task != null )
+                command.task.run(book);
+            else
+                command.applyTo(book);
+        }
+        catch (Exception e) {
+            error = e;
+        }
+
+        if ( !book.awaitingFlush && book.hasUnflushedEvents() ) {
+            book.awaitingFlush = true;
+            unflushed.add(book);
+        }
+
+        CommandCallback callback = command.callback;
+        CompletableFuture<Void> future = command.future;
+        long id = command.getId();
+
+        // Don't hold on to the caller's objects while the slot waits to be reused
+        command.book = null;
+        command.callback = null;
+        command.future = null;
+        command.task = null;
+
+        if ( callback != null ) {
+            try {
+                callback.onComplete(id, error);
+            }
+            catch (RuntimeException e) {
+                log.error("CommandCallback failed for order id:{}", box(id), e);
+            }
+        }
+        else if ( future != null ) {
+            if ( error == null )
+                future.complete(null);
+            else
+                future.completeExceptionally(error);
+        }
+        else if ( error != null ) {
+            log.warn("Command failed for order id:{} - {}", box(id), error.getMessage());
+        }
+    }
+
+    private void flushEvents() {
+        for (int i = 0; i < unflushed.size(); i++) {
+            OrderBook book = unflushed.get(i);
+            book.awaitingFlush = false;
+            try {
+                book.flushEvents();
+            }
+            catch (RuntimeException e) {
+                log.error("OrderEventListener failed", e);
+            }
+        }
+        unflushed.clear();
+    }
+}
@@ -0,0 +1,120 @@
+package com.mizuho;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+
+// Owns the OrderBooks for many instruments (e.g. by ISIN) and shards them across a fixed
+// number of OrderBookEventLoop worker threads. Each instrument is assigned to one worker when
+// it is added, and every update to its book is routed to that worker, so a book is only ever
+// written by one thread and no lock is shared between books on different workers.
+// Throughput therefore scales with the number of workers, as long as the instruments'
+// activity is spread across them.
+public class OrderBookManager implements AutoCloseable {
+
+    // An instrument's book and the worker that owns it
+    private static class Route {
+        private final OrderBook book;
+        private final OrderBookEventLoop worker;
+
+        private Route(OrderBook book, OrderBookEventLoop worker) {
+            this.book = book;
+            this.worker = worker;
+        }
+    }
+
+    private final OrderBookEventLoop[] workers;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private int nextWorker; // guarded by this
+
+    public OrderBookManager(int workerCount) {
+        this(workerCount, OrderBookEventLoop.DEFAULT_RING_SIZE, Thread::new);
+    }
+
+    public OrderBookManager(int workerCount, int ringSize, ThreadFactory threadFactory) {
+        if ( workerCount <= 0 )
+            throw new IllegalArgumentException("Invalid worker count: " + workerCount);
+
+        workers = new OrderBookEventLoop[workerCount];
+        for (int i = 0; i < workerCount; i++)
+            workers[i] = new OrderBookEventLoop("order-book-worker-" + i, ringSize, threadFactory);
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    // Instruments are spread round robin over the workers in the order they are added.
+    public synchronized OrderBook addInstrument(String instrument, double tickSize) throws Exception {
+        if ( routes.containsKey(instrument) )
+            throw new Exception("OrderBookManager already contains instrument: " + instrument);
+
+        OrderBook book = new OrderBook(tickSize);
+        routes.put(instrument, new Route(book, workers[nextWorker]));
+        nextWorker = (nextWorker + 1) % workers.length;
+        return book;
+    }
+
+    // The book is safe to read from any thread, but must only be updated through this manager.
+    public OrderBook getOrderBook(String instrument) throws Exception {
+        return getRoute(instrument).book;
+    }
+
+    public CompletableFuture<Void> addOrder(String instrument, Order order) throws Exception {
+        Route route = getRoute(instrument);
+        return route.worker.addOrder(route.book, order);
+    }
+
+    public void addOrder(String instrument, Order order, CommandCallback callback) throws Exception {
+        Route route = getRoute(instrument);
+        route.worker.addOrder(route.book, order, callback);
+    }
+
+    public CompletableFuture<Void> removeOrder(String instrument, long id) throws Exception {
+        Route route = getRoute(instrument);
+        return route.worker.removeOrder(route.book, id);
+    }
+
+    public void removeOrder(String instrument, long id, CommandCallback callback) throws Exception {
+        Route route = getRoute(instrument);
+        route.worker.removeOrder(route.book, id, callback);
+    }
+
+    public CompletableFuture<Void> modifyOrderSize(String instrument, long id, long size) throws Exception {
+        Route route = getRoute(instrument);
+        return route.worker.modifyOrderSize(route.book, id, size);
+    }
+
+    public void modifyOrderSize(String instrument, long id, long size, CommandCallback callback) throws Exception {
+        Route route = getRoute(instrument);
+        route.worker.modifyOrderSize(route.book, id, size, callback);
+    }
+
+    // Cancels and replaces the order at a new price and size as one step (see OrderBook.replaceOrder()).
+    public CompletableFuture<Void> replaceOrder(String instrument, long id, double price, long size) throws Exception {
+        Route route = getRoute(instrument);
+        return route.worker.execute(route.book, b -> b.replaceOrder(id, price, size));
+    }
+
+    // Runs the task on the instrument's worker, between its commands - for the updates with no
+    // method of their own here, such as the mass cancels and OrderBook.applyBatch().
+    public CompletableFuture<Void> execute(String instrument, BookTask task) throws Exception {
+        Route route = getRoute(instrument);
+        return route.worker.execute(route.book, task);
+    }
+
+    // Stops every worker once the commands already published to it have been applied.
+    @Override
+    public void close() {
+        for (OrderBookEventLoop worker : workers)
+            worker.close();
+    }
+
+    private Route getRoute(String instrument) throws Exception {
+        Route route = routes.get(instrument);
+        if ( route == null )
+            throw new Exception("Unknown instrument: " + instrument);
+        return route;
+    }
+}
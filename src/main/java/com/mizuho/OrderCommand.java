@@ -0,0 +1,95 @@
+package com.mizuho;
+
+import java.util.concurrent.CompletableFuture;
+
+// An add, cancel or modify of one order. Instances are mutable and are reused: the
+// CommandRingBuffer preallocates one per slot and producers overwrite the fields, so
+// publishing a command allocates nothing.
+public class OrderCommand {
+    public enum Type { ADD, CANCEL, MODIFY }
+
+    private Type type;
+    private long id;
+    private double price; // ADD only
+    private char side; // ADD only
+    private long size; // ADD and MODIFY
+    private long owner; // ADD only
+
+    // Set by the event loop plumbing only
+    OrderBook book;
+    CommandCallback callback;
+    CompletableFuture<Void> future;
+    BookTask task; // run instead of the add, cancel or modify when set
+
+    public OrderCommand setAdd(long id, double price, char side, long size) {
+        return setAdd(id, price, side, size, 0);
+    }
+
+    public OrderCommand setAdd(long id, double price, char side, long size, long owner) {
+        this.type = Type.ADD;
+        this.id = id;
+        this.price = price;
+        this.side = side;
+        this.size = size;
+        this.owner = owner;
+        return this;
+    }
+
+    public OrderCommand setAdd(Order order) {
+        return setAdd(order.getId(), order.getPrice(), order.getSide(), order.getSize(), order.getOwner());
+    }
+
+    public OrderCommand setCancel(long id) {
+        this.type = Type.CANCEL;
+        this.id = id;
+        return this;
+    }
+
+    public OrderCommand setModify(long id, long size) {
+        this.type = Type.MODIFY;
+        this.id = id;
+        this.size = size;
+        return this;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public char getSide() {
+        return side;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getOwner() {
+        return owner;
+    }
+
+    // Applies the command to the given book on the calling thread.
+    public void applyTo(OrderBook orderBook) throws Exception {
+        switch (type) {
+            case ADD:
+                orderBook.addOrder(id, price, side, size, owner);
+                break;
+            case CANCEL:
+                orderBook.removeOrder(id);
+                break;
+            case MODIFY:
+                orderBook.modifyOrderSize(id, size);
+                break;
+            default:
+                throw new Exception("Unknown command type: " + type);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.mizuho;
+
+// One change to one order in the book, for a market-by-order (L3) feed:
+//   ADD      an order came to rest in the book (only the part left after matching, if any)
+//   CANCEL   an order was removed, or modified to zero size
+//   MODIFY   an order's size was changed
+//   EXECUTE  a resting order was filled, fully (size is then 0) or partly, by an incoming order
+//
+// size is the order's size after the change (for CANCEL, the size that was cancelled).
+// executedSize is only set for EXECUTE. queuePosition is the number of orders ahead of this
+// one at its price, before the change for CANCEL and EXECUTE and after it for ADD and MODIFY.
+//
+// The OrderBook preallocates its events and reuses them for every batch, so an
+// OrderEventListener that wants to keep one beyond onOrderEvents() must copy it.
+public class OrderEvent {
+    public enum Type { ADD, CANCEL, MODIFY, EXECUTE }
+
+    private Type type;
+    private long orderId;
+    private double price;
+    private char side; // B "Bid" or O "Offer"
+    private long size;
+    private long executedSize;
+    private int queuePosition;
+
+    void set(Type type, long orderId, double price, char side, long size, long executedSize, int queuePosition) {
+        this.type = type;
+        this.orderId = orderId;
+        this.price = price;
+        this.side = side;
+        this.size = size;
+        this.executedSize = executedSize;
+        this.queuePosition = queuePosition;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getOrderId() {
+        return orderId;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public char getSide() {
+        return side;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getExecutedSize() {
+        return executedSize;
+    }
+
+    public int getQueuePosition() {
+        return queuePosition;
+    }
+
+    public OrderEvent copy() {
+        OrderEvent event = new OrderEvent();
+        event.set(type, orderId, price, side, size, executedSize, queuePosition);
+        return event;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderEvent{type=" + type + ", orderId=" + orderId + ", price=" + price + ", side=" + side +
+                ", size=" + size + ", executedSize=" + executedSize + ", queuePosition=" + queuePosition + "}";
+    }
+}
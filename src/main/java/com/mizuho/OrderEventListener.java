@@ -0,0 +1,11 @@
+package com.mizuho;
+
+// Receives the market-by-order (L3) feed of an OrderBook in batches: events[0] to
+// events[count - 1], in the order the changes were applied to the book.
+//
+// The array and the events in it are reused for the next batch - copy() an event to keep it.
+// Called while the book's event lock is held (and possibly a level lock too), so
+// implementations should be quick and must not modify the same OrderBook.
+public interface OrderEventListener {
+    void onOrderEvents(OrderEvent[] events, int count);
+}
@@ -0,0 +1,100 @@
+package com.mizuho;
+
+import java.nio.ByteBuffer;
+
+// An order by order (L3) market data event - see OrderEvent and MessageFlyweight:
+//   orderId(8) price(8) size(8) executedSize(8) queuePosition(4) type(1) side(1)
+// Market data carries prices as doubles, as the listeners deliver them.
+public class OrderEventMessage extends MessageFlyweight {
+    public static final int TEMPLATE_ID = 10;
+    public static final int BLOCK_LENGTH = 38;
+
+    private static final OrderEvent.Type[] TYPES = OrderEvent.Type.values(); // values() copies the array on every call
+
+    private static final int ORDER_ID_OFFSET = 0;
+    private static final int PRICE_OFFSET = 8;
+    private static final int SIZE_OFFSET = 16;
+    private static final int EXECUTED_SIZE_OFFSET = 24;
+    private static final int QUEUE_POSITION_OFFSET = 32;
+    private static final int TYPE_OFFSET = 36;
+    private static final int SIDE_OFFSET = 37;
+
+    public OrderEventMessage wrap(ByteBuffer buffer, int offset) {
+        wrapBuffer(buffer, offset);
+        return this;
+    }
+
+    public OrderEventMessage wrapAndApplyHeader(ByteBuffer buffer, int offset, MessageHeader header) {
+        header.wrap(buffer, offset).apply(BLOCK_LENGTH, TEMPLATE_ID);
+        return wrap(buffer, offset + MessageHeader.ENCODED_LENGTH);
+    }
+
+    // Writes every field from the event, e.g. inside an OrderEventListener.
+    public OrderEventMessage set(OrderEvent event) {
+        return type(event.getType()).orderId(event.getOrderId()).price(event.getPrice()).side(event.getSide())
+                .size(event.getSize()).executedSize(event.getExecutedSize()).queuePosition(event.getQueuePosition());
+    }
+
+    public OrderEvent.Type type() {
+        return TYPES[buffer.get(offset + TYPE_OFFSET)];
+    }
+
+    public OrderEventMessage type(OrderEvent.Type type) {
+        buffer.put(offset + TYPE_OFFSET, (byte)type.ordinal());
+        return this;
+    }
+
+    public long orderId() {
+        return buffer.getLong(offset + ORDER_ID_OFFSET);
+    }
+
+    public OrderEventMessage orderId(long orderId) {
+        buffer.putLong(offset + ORDER_ID_OFFSET, orderId);
+        return this;
+    }
+
+    public double price() {
+        return buffer.getDouble(offset + PRICE_OFFSET);
+    }
+
+    public OrderEventMessage price(double price) {
+        buffer.putDouble(offset + PRICE_OFFSET, price);
+        return this;
+    }
+
+    public char side() {
+        return (char)buffer.get(offset + SIDE_OFFSET);
+    }
+
+    public OrderEventMessage side(char side) {
+        buffer.put(offset + SIDE_OFFSET, (byte)side);
+        return this;
+    }
+
+    public long size() {
+        return buffer.getLong(offset + SIZE_OFFSET);
+    }
+
+    public OrderEventMessage size(long size) {
+        buffer.putLong(offset + SIZE_OFFSET, size);
+        return this;
+    }
+
+    public long executedSize() {
+        return buffer.getLong(offset + EXECUTED_SIZE_OFFSET);
+    }
+
+    public OrderEventMessage executedSize(long executedSize) {
+        buffer.putLong(offset + EXECUTED_SIZE_OFFSET, executedSize);
+        return this;
+    }
+
+    public int queuePosition() {
+        return buffer.getInt(offset + QUEUE_POSITION_OFFSET);
+    }
+
+    public OrderEventMessage queuePosition(int queuePosition) {
+        buffer.putInt(offset + QUEUE_POSITION_OFFSET, queuePosition);
+        return this;
+    }
+}
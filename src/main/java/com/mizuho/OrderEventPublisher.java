@@ -0,0 +1,67 @@
+package com.mizuho;
+
+import java.util.Arrays;
+
+// Collects an OrderBook's OrderEvents into a preallocated batch and hands the whole batch to
+// the listeners when it is full or on flush(), so the per-change cost is filling in one
+// reused event rather than a call to every listener.
+//
+// Events are published while the lock of the level they change is held, so the events for
+// one level are always in order. The batch itself is guarded by the publisher's lock.
+class OrderEventPublisher {
+    static final int DEFAULT_BATCH_SIZE = 256;
+
+    private OrderEvent[] batch; // guarded by this
+    private int count; // guarded by this
+    private volatile OrderEventListener[] listeners = new OrderEventListener[0];
+
+    OrderEventPublisher() {
+        setBatchSize(DEFAULT_BATCH_SIZE);
+    }
+
+    // Any events already collected are flushed first.
+    public synchronized void setBatchSize(int batchSize) {
+        if ( batchSize <= 0 )
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+
+        flush();
+        batch = new OrderEvent[batchSize];
+        for (int i = 0; i < batchSize; i++)
+            batch[i] = new OrderEvent();
+    }
+
+    public boolean hasListeners() {
+        return listeners.length != 0;
+    }
+
+    public synchronized void addListener(OrderEventListener listener) {
+        OrderEventListener[] copy = Arrays.copyOf(listeners, listeners.length + 1);
+        copy[copy.length - 1] = listener;
+        listeners = copy;
+    }
+
+    public synchronized void publish(OrderEvent.Type type, long orderId, double price, char side, long size, long executedSize, int queuePosition) {
+        batch[count++].set(type, orderId, price, side, size, executedSize, queuePosition);
+        if ( count == batch.length )
+            flush();
+    }
+
+    // Hands any events collected so far to the listeners.
+    public synchronized void flush() {
+        if ( count == 0 )
+            return;
+
+        try {
+            for (OrderEventListener listener : listeners)
+                listener.onOrderEvents(batch, count);
+        }
+        finally {
+            count = 0; // a failing listener loses the batch rather than stopping all further events
+        }
+    }
+
+    // A hint only - not read under the lock.
+    public boolean hasPending() {
+        return count != 0;
+    }
+}
@@ -0,0 +1,61 @@
+package com.mizuho;
+
+// Internal class allowing size to be changed. It is also an intrusive node of the
+// doubly linked list kept by its PriceLevel, so removing an order from the middle of
+// a level is O[1] and no separate list node has to be allocated.
+//
+// With pooling enabled (see OrderBook.enablePooling()) a removed holder is reused for a later
+// order, so its fields are not final. A thread that found a holder by id without a lock must
+// check, once it holds the level lock, that the holder is still on that level and still has the
+// id - otherwise it may have been recycled for another order.
+class OrderHolder {
+    private long id; // id of order
+    private long priceTicks; // price as a whole number of ticks
+    private char side; // B "Bid" or O "Offer"
+    private volatile long size; // only written under the level lock
+    private long owner; // 0 if none
+
+    // Links are owned by the PriceLevel and only written under its lock. level may be read
+    // without the lock as a hint of which level to lock, as long as it is checked again once
+    // the lock is held.
+    OrderHolder prev;
+    OrderHolder next;
+    PriceLevel level; // null when the order is not resting on a level, i.e. it has been removed
+
+    OrderHolder(long id, long priceTicks, char side, long size, long owner) {
+        reset(id, priceTicks, side, size, owner);
+    }
+
+    // Readies a pooled holder for a new order. It must not be on a level or in the index.
+    void reset(long id, long priceTicks, char side, long size, long owner) {
+        this.id = id;
+        this.priceTicks = priceTicks;
+        this.side = side;
+        this.size = size;
+        this.owner = owner;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getPriceTicks() {
+        return priceTicks;
+    }
+
+    public char getSide() {
+        return side;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getOwner() {
+        return owner;
+    }
+
+    public void setSize(long s) {
+        size = s;
+    }
+}
@@ -0,0 +1,205 @@
+package com.mizuho;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// The orders of an OffHeapOrderBook, as fixed width records in direct ByteBuffers addressed by
+// slot index. A resting order is then 48 bytes outside the Java heap rather than an OrderHolder
+// on it, so however many orders rest in the book the garbage collector has no more objects to
+// trace or copy.
+//
+// Record layout (native byte order):
+//   id(8) priceTicks(8) size(8) owner(8) prev(4) next(4) side(2) unused(6)
+// prev and next are the slots of the neighbouring orders on the same level, NONE at either
+// end. Free slots are chained through next, so a cancelled order's slot is reused by the next
+// add and allocating a slot allocates nothing.
+//
+// The records are held in chunks of CHUNK_SIZE, and the slab grows by adding a chunk, so slot
+// indexes never change and nothing is copied as it grows.
+//
+// The slab also indexes its orders by id: an open addressing table (as in LongHashIndex) of
+// slot numbers, which compares the ids stored in the records themselves, so the index is a
+// single int[] - 8 bytes per order at its load factor, in one object the GC need not trace.
+//
+// Not thread safe.
+class OrderSlab {
+    static final int NONE = -1;
+    static final int RECORD_SIZE = 48;
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS; // records
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int ID = 0;
+    private static final int PRICE_TICKS = 8;
+    private static final int SIZE = 16;
+    private static final int OWNER = 24;
+    private static final int PREV = 32;
+    private static final int NEXT = 36;
+    private static final int SIDE = 40;
+
+    private static final int MIN_TABLE_SIZE = 16;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private int used; // slots ever handed out - those from here on are free but not on the free list
+    private int freeList = NONE;
+    private int size;
+
+    private int[] table; // slot + 1 per bucket, 0 for an empty bucket
+    private int mask;
+
+    OrderSlab() {
+        this(0);
+    }
+
+    OrderSlab(int expectedSize) {
+        int tableSize = MIN_TABLE_SIZE;
+        while ( tableSize / 2 < expectedSize )
+            tableSize <<= 1;
+        table = new int[tableSize];
+        mask = tableSize - 1;
+        while ( capacity() < expectedSize )
+            addChunk();
+    }
+
+    // The number of orders in the slab.
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return chunks.length * CHUNK_SIZE;
+    }
+
+    // Stores a new order, which must not have the id of one already in the slab, and returns its
+    // slot. The order's links are NONE.
+    public int allocate(long id, long priceTicks, char side, long size, long owner) {
+        int slot;
+        if ( freeList != NONE ) {
+            slot = freeList;
+            freeList = getNext(slot);
+        }
+        else {
+            if ( used == capacity() )
+                addChunk();
+            slot = used++;
+        }
+
+        ByteBuffer chunk = chunks[slot >>> CHUNK_BITS];
+        int at = (slot & CHUNK_MASK) * RECORD_SIZE;
+        chunk.putLong(at + ID, id);
+        chunk.putLong(at + PRICE_TICKS, priceTicks);
+        chunk.putLong(at + SIZE, size);
+        chunk.putLong(at + OWNER, owner);
+        chunk.putInt(at + PREV, NONE);
+        chunk.putInt(at + NEXT, NONE);
+        chunk.putChar(at + SIDE, side);
+
+        this.size++;
+        if ( this.size > table.length / 2 )
+            resizeTable();
+        int i = LongHashIndex.hash(id) & mask;
+        while ( table[i] != 0 )
+            i = (i + 1) & mask;
+        table[i] = slot + 1;
+        return slot;
+    }
+
+    // Removes the order from the index and puts its slot on the free list. The caller must have
+    // unlinked it from its level.
+    public void free(int slot) {
+        unindex(slot);
+        size--;
+        setNext(slot, freeList);
+        freeList = slot;
+    }
+
+    // Returns the slot of the order with the id, or NONE.
+    public int find(long id) {
+        for (int i = LongHashIndex.hash(id) & mask; ; i = (i + 1) & mask) {
+            int entry = table[i];
+            if ( entry == 0 )
+                return NONE;
+            if ( getId(entry - 1) == id )
+                return entry - 1;
+        }
+    }
+
+    public long getId(int slot) {
+        return chunks[slot >>> CHUNK_BITS].getLong((slot & CHUNK_MASK) * RECORD_SIZE + ID);
+    }
+
+    public long getPriceTicks(int slot) {
+        return chunks[slot >>> CHUNK_BITS].getLong((slot & CHUNK_MASK) * RECORD_SIZE + PRICE_TICKS);
+    }
+
+    public long getSize(int slot) {
+        return chunks[slot >>> CHUNK_BITS].getLong((slot & CHUNK_MASK) * RECORD_SIZE + SIZE);
+    }
+
+    public void setSize(int slot, long size) {
+        chunks[slot >>> CHUNK_BITS].putLong((slot & CHUNK_MASK) * RECORD_SIZE + SIZE, size);
+    }
+
+    public long getOwner(int slot) {
+        return chunks[slot >>> CHUNK_BITS].getLong((slot & CHUNK_MASK) * RECORD_SIZE + OWNER);
+    }
+
+    public char getSide(int slot) {
+        return chunks[slot >>> CHUNK_BITS].getChar((slot & CHUNK_MASK) * RECORD_SIZE + SIDE);
+    }
+
+    public int getPrev(int slot) {
+        return chunks[slot >>> CHUNK_BITS].getInt((slot & CHUNK_MASK) * RECORD_SIZE + PREV);
+    }
+
+    public void setPrev(int slot, int prev) {
+        chunks[slot >>> CHUNK_BITS].putInt((slot & CHUNK_MASK) * RECORD_SIZE + PREV, prev);
+    }
+
+    public int getNext(int slot) {
+        return chunks[slot >>> CHUNK_BITS].getInt((slot & CHUNK_MASK) * RECORD_SIZE + NEXT);
+    }
+
+    public void setNext(int slot, int next) {
+        chunks[slot >>> CHUNK_BITS].putInt((slot & CHUNK_MASK) * RECORD_SIZE + NEXT, next);
+    }
+
+    private void addChunk() {
+        chunks = Arrays.copyOf(chunks, chunks.length + 1);
+        chunks[chunks.length - 1] = ByteBuffer.allocateDirect(CHUNK_SIZE * RECORD_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    // Backward shift deletion, as in LongHashIndex.remove().
+    private void unindex(int slot) {
+        int i = LongHashIndex.hash(getId(slot)) & mask;
+        while ( table[i] != slot + 1 )
+            i = (i + 1) & mask;
+
+        table[i] = 0;
+        int gap = i;
+        for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int home = LongHashIndex.hash(getId(table[j] - 1)) & mask;
+            if ( ((j - home) & mask) >= ((j - gap) & mask) ) {
+                table[gap] = table[j];
+                table[j] = 0;
+                gap = j;
+            }
+        }
+    }
+
+    private void resizeTable() {
+        int[] old = table;
+        table = new int[old.length << 1];
+        mask = table.length - 1;
+        for (int entry : old) {
+            if ( entry != 0 ) {
+                int i = LongHashIndex.hash(getId(entry - 1)) & mask;
+                while ( table[i] != 0 )
+                    i = (i + 1) & mask;
+                table[i] = entry;
+            }
+        }
+    }
+}
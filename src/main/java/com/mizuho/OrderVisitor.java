@@ -0,0 +1,9 @@
+package com.mizuho;
+
+// Receives the resting orders of one side of the book from OrderBook.forEachOrder(), as
+// primitives, so walking the book allocates nothing. Called while the lock of the order's
+// price level is held, so implementations should be quick and must not modify the same
+// OrderBook.
+public interface OrderVisitor {
+    void visit(long id, double price, char side, long size);
+}
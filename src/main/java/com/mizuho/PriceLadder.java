@@ -0,0 +1,151 @@
+package com.mizuho;
+
+// The price levels for one side of the book, sorted best price first (highest bid or
+// lowest offer), so level N of the book is simply element N-1.
+//
+// Prices are held as long tick counts (see TickSize), so the keys are primitive, compare
+// exactly and are never boxed.
+//
+// The sorted arrays are copy-on-write: readers take the current snapshot from a volatile
+// field without locking, which gives O[1] access by level and O[log(n)] access by price with
+// no allocation. Writers (creating or removing a whole level) synchronize on the ladder and
+// publish a new copy, which costs O[n] in the number of levels. Levels are created and removed
+// far less often than orders are added, cancelled or queried, which is the trade-off here.
+//
+// With a pool set, removed levels are kept and reused for the next new price rather than
+// allocated, but the copy-on-write arrays are still allocated whenever a level comes or goes.
+// A reader working from an older snapshot may then see a reused level with its new price -
+// the same kind of stale view it would otherwise get from a level that has since been removed.
+// Levels are only created under the book's match lock, which is what keeps reuse safe for writers.
+class PriceLadder {
+    private static final long[] NO_PRICES = new long[0];
+    private static final PriceLevel[] NO_LEVELS = new PriceLevel[0];
+
+    // Immutable once published
+    private static class Snapshot {
+        private final long[] prices;
+        private final PriceLevel[] levels;
+
+        private Snapshot(long[] prices, PriceLevel[] levels) {
+            this.prices = prices;
+            this.levels = levels;
+        }
+    }
+
+    private final boolean descending; // true for bids
+    private volatile Snapshot snapshot = new Snapshot(NO_PRICES, NO_LEVELS);
+    private volatile ObjectPool<PriceLevel> pool; // null unless pooling is enabled
+
+    PriceLadder(boolean descending) {
+        this.descending = descending;
+    }
+
+    public int size() {
+        return snapshot.levels.length;
+    }
+
+    void setPool(ObjectPool<PriceLevel> pool) {
+        this.pool = pool;
+    }
+
+    // Returns the level at the given 0 based index (0 is the best price), or null if the
+    // ladder is not that deep.
+    public PriceLevel getLevel(int index) {
+        PriceLevel[] levels = snapshot.levels;
+        if ( index < 0 || index >= levels.length )
+            return null;
+        return levels[index];
+    }
+
+    // Returns the levels best price first. The array must not be modified.
+    public PriceLevel[] getLevels() {
+        return snapshot.levels;
+    }
+
+    public PriceLevel get(long price) {
+        Snapshot s = snapshot;
+        int i = indexOf(s.prices, price);
+        return i >= 0 ? s.levels[i] : null;
+    }
+
+    public PriceLevel getOrCreate(long price) {
+        PriceLevel level = get(price);
+        if ( level != null )
+            return level;
+
+        // Taken from the pool before the ladder lock, as resetting it takes the level lock
+        level = newLevel(price);
+        synchronized (this) {
+            Snapshot s = snapshot;
+            int i = indexOf(s.prices, price);
+            if ( i >= 0 )
+                return s.levels[i]; // created by another thread since our unlocked read
+
+            int insertAt = -(i + 1);
+            int n = s.prices.length;
+            long[] prices = new long[n + 1];
+            PriceLevel[] levels = new PriceLevel[n + 1];
+            System.arraycopy(s.prices, 0, prices, 0, insertAt);
+            System.arraycopy(s.levels, 0, levels, 0, insertAt);
+            System.arraycopy(s.prices, insertAt, prices, insertAt + 1, n - insertAt);
+            System.arraycopy(s.levels, insertAt, levels, insertAt + 1, n - insertAt);
+
+            prices[insertAt] = price;
+            levels[insertAt] = level;
+            snapshot = new Snapshot(prices, levels);
+            return level;
+        }
+    }
+
+    public synchronized void remove(PriceLevel level) {
+        Snapshot s = snapshot;
+        int i = indexOf(s.prices, level.getPriceTicks());
+        if ( i < 0 || s.levels[i] != level )
+            return;
+
+        int n = s.prices.length;
+        long[] prices = n == 1 ? NO_PRICES : new long[n - 1];
+        PriceLevel[] levels = n == 1 ? NO_LEVELS : new PriceLevel[n - 1];
+        System.arraycopy(s.prices, 0, prices, 0, i);
+        System.arraycopy(s.levels, 0, levels, 0, i);
+        System.arraycopy(s.prices, i + 1, prices, i, n - i - 1);
+        System.arraycopy(s.levels, i + 1, levels, i, n - i - 1);
+        snapshot = new Snapshot(prices, levels);
+
+        ObjectPool<PriceLevel> pool = this.pool;
+        if ( pool != null && level.isRetired() )
+            pool.offer(level);
+    }
+
+    private PriceLevel newLevel(long price) {
+        ObjectPool<PriceLevel> pool = this.pool;
+        PriceLevel level = pool != null ? pool.poll() : null;
+        if ( level == null )
+            return new PriceLevel(price);
+        synchronized (level) {
+            level.reset(price);
+        }
+        return level;
+    }
+
+    // Binary search in best-first order. Returns the index if found, otherwise
+    // -(insertion point) - 1 as per Arrays.binarySearch().
+    private int indexOf(long[] prices, long price) {
+        int low = 0;
+        int high = prices.length - 1;
+        while ( low <= high ) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compare(prices[mid], price);
+            if ( descending )
+                cmp = -cmp;
+
+            if ( cmp < 0 )
+                low = mid + 1;
+            else if ( cmp > 0 )
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+}
@@ -0,0 +1,121 @@
+package com.mizuho;
+
+// All the orders resting at one price, in time priority (head is the oldest).
+// The list is intrusive (see OrderHolder) so both addLast() and remove() are O[1].
+// The aggregate size is maintained as orders are added, removed and resized, so reading
+// it is O[1] and needs no lock.
+// Not thread safe for writes - callers synchronize on the PriceLevel instance.
+//
+// With pooling enabled a retired level may be reset and reused for another price on the same
+// side (see PriceLadder), so anyone holding a level they got from the ladder before locking it
+// must check both isRetired() and the price once the lock is held.
+class PriceLevel {
+    private long priceTicks;
+    private OrderHolder head;
+    private OrderHolder tail;
+    private int orderCount;
+    private volatile long totalSize; // only written under the level lock
+    private boolean retired; // set once the empty level has been taken out of its PriceLadder
+
+    PriceLevel(long priceTicks) {
+        this.priceTicks = priceTicks;
+    }
+
+    public long getPriceTicks() {
+        return priceTicks;
+    }
+
+    public OrderHolder getHead() {
+        return head;
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public boolean isEmpty() {
+        return orderCount == 0;
+    }
+
+    public boolean isRetired() {
+        return retired;
+    }
+
+    public void retire() {
+        retired = true;
+    }
+
+    // Readies a retired, empty level for reuse at another price. The caller must hold the level lock.
+    void reset(long priceTicks) {
+        this.priceTicks = priceTicks;
+        head = null;
+        tail = null;
+        orderCount = 0;
+        totalSize = 0;
+        retired = false;
+    }
+
+    public void addLast(OrderHolder orderHolder) {
+        orderHolder.level = this;
+        orderHolder.prev = tail;
+        orderHolder.next = null;
+        if ( tail == null )
+            head = orderHolder;
+        else
+            tail.next = orderHolder;
+        tail = orderHolder;
+        orderCount++;
+        totalSize += orderHolder.getSize();
+    }
+
+    // Returns false if the order is not on this level (e.g. it has already been removed).
+    public boolean remove(OrderHolder orderHolder) {
+        if ( orderHolder.level != this )
+            return false;
+
+        if ( orderHolder.prev == null )
+            head = orderHolder.next;
+        else
+            orderHolder.prev.next = orderHolder.next;
+
+        if ( orderHolder.next == null )
+            tail = orderHolder.prev;
+        else
+            orderHolder.next.prev = orderHolder.prev;
+
+        orderHolder.prev = null;
+        orderHolder.next = null;
+        orderHolder.level = null;
+        orderCount--;
+        totalSize -= orderHolder.getSize();
+        return true;
+    }
+
+    // Sends the order to the back of the queue, e.g. when it loses priority.
+    public void moveToTail(OrderHolder orderHolder) {
+        if ( orderHolder != tail && remove(orderHolder) )
+            addLast(orderHolder);
+    }
+
+    // The number of orders ahead of this one, which is O[n] as it walks the list from the head.
+    public int positionOf(OrderHolder orderHolder) {
+        int position = 0;
+        for (OrderHolder o = head; o != orderHolder && o != null; o = o.next)
+            position++;
+        return position;
+    }
+
+    // Returns false if the order is not on this level (e.g. it has already been removed).
+    public boolean setOrderSize(OrderHolder orderHolder, long size) {
+        if ( orderHolder.level != this )
+            return false;
+
+        totalSize += size - orderHolder.getSize();
+        orderHolder.setSize(size);
+        return true;
+    }
+}
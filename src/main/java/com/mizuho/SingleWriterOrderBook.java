@@ -0,0 +1,116 @@
+package com.mizuho;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// An OrderBook whose updates are all applied by one OrderBookEventLoop thread. Callers on
+// any thread publish adds, cancels and modifies into the loop's ring buffer and are told of
+// completion through a CompletableFuture or, without allocating, a CommandCallback.
+//
+// Reads go straight to the underlying book, which is safe for concurrent readers.
+public class SingleWriterOrderBook implements AutoCloseable {
+    private final OrderBook book;
+    private final OrderBookEventLoop eventLoop;
+
+    // Writes snapshot files, one at a time, so the writer thread never waits for the disk
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "book-snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SingleWriterOrderBook(OrderBook book) {
+        this(book, new OrderBookEventLoop("order-book-writer"));
+    }
+
+    public SingleWriterOrderBook(OrderBook book, OrderBookEventLoop eventLoop) {
+        this.book = book;
+        this.eventLoop = eventLoop;
+    }
+
+    public OrderBook getOrderBook() {
+        return book;
+    }
+
+    public CompletableFuture<Void> addOrder(Order order) {
+        return eventLoop.addOrder(book, order);
+    }
+
+    public void addOrder(Order order, CommandCallback callback) {
+        eventLoop.addOrder(book, order, callback);
+    }
+
+    public CompletableFuture<Void> removeOrder(long id) {
+        return eventLoop.removeOrder(book, id);
+    }
+
+    public void removeOrder(long id, CommandCallback callback) {
+        eventLoop.removeOrder(book, id, callback);
+    }
+
+    public CompletableFuture<Void> modifyOrderSize(long id, long size) {
+        return eventLoop.modifyOrderSize(book, id, size);
+    }
+
+    public void modifyOrderSize(long id, long size, CommandCallback callback) {
+        eventLoop.modifyOrderSize(book, id, size, callback);
+    }
+
+    // Cancels and replaces the order at a new price and size as one step (see OrderBook.replaceOrder()).
+    public CompletableFuture<Void> replaceOrder(long id, double price, long size) {
+        return eventLoop.execute(book, b -> b.replaceOrder(id, price, size));
+    }
+
+    // Runs the task on the writer thread, between commands - for the updates with no method of
+    // their own here, such as the mass cancels and OrderBook.applyBatch().
+    public CompletableFuture<Void> execute(BookTask task) {
+        return eventLoop.execute(book, task);
+    }
+
+    // Captures a BookSnapshot on the writer thread, between commands, so that it is consistent
+    // across both sides and with the journal's position, then writes it to path and forces it to
+    // disk on a separate snapshot thread. Commands are only held up while the levels are copied
+    // into memory, not for the file I/O. The future completes once the file is on disk.
+    public CompletableFuture<Void> snapshot(Path path, CommandJournal journal) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        eventLoop.execute(book, b -> {
+            BookSnapshot snapshot = BookSnapshot.capture(b, journal.getPosition());
+            snapshotWriter.execute(() -> {
+                try {
+                    snapshot.writeTo(path);
+                    written.complete(null);
+                }
+                catch (Exception e) {
+                    written.completeExceptionally(e);
+                }
+            });
+        }).whenComplete((ignored, e) -> {
+            if ( e != null )
+                written.completeExceptionally(e); // the capture failed
+        });
+        return written;
+    }
+
+    public double getPriceForSideAndLevel(char side, int level) throws Exception {
+        return book.getPriceForSideAndLevel(side, level);
+    }
+
+    public long getSizeForSideAndLevel(char side, int level) throws Exception {
+        return book.getSizeForSideAndLevel(side, level);
+    }
+
+    public List<Order> getOrdersForSide(char side) throws Exception {
+        return book.getOrdersForSide(side);
+    }
+
+    // Stops the writer thread once every command published so far has been applied, and lets
+    // any snapshot already captured finish writing.
+    @Override
+    public void close() {
+        eventLoop.close();
+        snapshotWriter.shutdown();
+    }
+}
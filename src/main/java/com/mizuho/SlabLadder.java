@@ -0,0 +1,145 @@
+package com.mizuho;
+
+import java.util.Arrays;
+
+// The price levels of one side of an OffHeapOrderBook, sorted best price first, as parallel
+// primitive arrays: for each level its price, the slots of its oldest and newest orders in the
+// OrderSlab, its order count and its total size. Like PriceLadder, level N of the book is
+// element N-1 and finding a level by price is a binary search; inserting or removing a level
+// shifts the levels behind it, which is O[n] in the number of levels. Unlike PriceLadder there
+// is one object per side rather than one per level, and no copy-on-write, as the book is not
+// thread safe.
+//
+// Each level's orders are a doubly linked list through the prev and next links of their slab
+// records, oldest first.
+class SlabLadder {
+    private static final int MIN_LEVELS = 16;
+
+    private final boolean descending; // true for bids
+    private long[] prices = new long[MIN_LEVELS];
+    private int[] heads = new int[MIN_LEVELS];
+    private int[] tails = new int[MIN_LEVELS];
+    private int[] orderCounts = new int[MIN_LEVELS];
+    private long[] totalSizes = new long[MIN_LEVELS];
+    private int size;
+
+    SlabLadder(boolean descending) {
+        this.descending = descending;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getPriceTicks(int index) {
+        return prices[index];
+    }
+
+    public int getHead(int index) {
+        return heads[index];
+    }
+
+    public int getOrderCount(int index) {
+        return orderCounts[index];
+    }
+
+    public long getTotalSize(int index) {
+        return totalSizes[index];
+    }
+
+    // Returns the index of the level at the price, or -(insertion point) - 1 if there is none.
+    public int indexOf(long price) {
+        int low = 0;
+        int high = size - 1;
+        while ( low <= high ) {
+            int mid = (low + high) >>> 1;
+            long midPrice = prices[mid];
+            if ( midPrice == price )
+                return mid;
+            if ( descending ? midPrice > price : midPrice < price )
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return -(low + 1);
+    }
+
+    // Adds the order to the back of its price's level, creating the level if need be, and
+    // returns the level's index.
+    public int append(OrderSlab slab, int slot) {
+        long price = slab.getPriceTicks(slot);
+        int index = indexOf(price);
+        if ( index < 0 ) {
+            index = -(index + 1);
+            insert(index, price);
+        }
+
+        int tail = tails[index];
+        slab.setPrev(slot, tail);
+        if ( tail == OrderSlab.NONE )
+            heads[index] = slot;
+        else
+            slab.setNext(tail, slot);
+        tails[index] = slot;
+        orderCounts[index]++;
+        totalSizes[index] += slab.getSize(slot);
+        return index;
+    }
+
+    // Takes the order off the level at index, and takes the level out if that empties it.
+    public void unlink(OrderSlab slab, int slot, int index) {
+        int prev = slab.getPrev(slot);
+        int next = slab.getNext(slot);
+        if ( prev == OrderSlab.NONE )
+            heads[index] = next;
+        else
+            slab.setNext(prev, next);
+        if ( next == OrderSlab.NONE )
+            tails[index] = prev;
+        else
+            slab.setPrev(next, prev);
+
+        totalSizes[index] -= slab.getSize(slot);
+        if ( --orderCounts[index] == 0 )
+            remove(index);
+    }
+
+    // Changes the order's size, keeping its place in the queue.
+    public void setOrderSize(OrderSlab slab, int slot, int index, long size) {
+        totalSizes[index] += size - slab.getSize(slot);
+        slab.setSize(slot, size);
+    }
+
+    private void insert(int index, long price) {
+        if ( size == prices.length ) {
+            int capacity = size << 1;
+            prices = Arrays.copyOf(prices, capacity);
+            heads = Arrays.copyOf(heads, capacity);
+            tails = Arrays.copyOf(tails, capacity);
+            orderCounts = Arrays.copyOf(orderCounts, capacity);
+            totalSizes = Arrays.copyOf(totalSizes, capacity);
+        }
+        int moved = size - index;
+        System.arraycopy(prices, index, prices, index + 1, moved);
+        System.arraycopy(heads, index, heads, index + 1, moved);
+        System.arraycopy(tails, index, tails, index + 1, moved);
+        System.arraycopy(orderCounts, index, orderCounts, index + 1, moved);
+        System.arraycopy(totalSizes, index, totalSizes, index + 1, moved);
+        prices[index] = price;
+        heads[index] = OrderSlab.NONE;
+        tails[index] = OrderSlab.NONE;
+        orderCounts[index] = 0;
+        totalSizes[index] = 0;
+        size++;
+    }
+
+    private void remove(int index) {
+        int moved = size - index - 1;
+        System.arraycopy(prices, index + 1, prices, index, moved);
+        System.arraycopy(heads, index + 1, heads, index, moved);
+        System.arraycopy(tails, index + 1, tails, index, moved);
+        System.arraycopy(orderCounts, index + 1, orderCounts, index, moved);
+        System.arraycopy(totalSizes, index + 1, totalSizes, index, moved);
+        size--;
+    }
+}
@@ -0,0 +1,40 @@
+package com.mizuho;
+
+// Converts between the double prices used on the Order API and the long tick counts the
+// book uses internally. Integer ticks compare exactly and need no boxing, whereas doubles
+// are sensitive to their floating point representation (e.g. 0.1 + 0.2 != 0.3).
+public class TickSize {
+    private final double tickSize;
+
+    // When the tick size is 1/n (e.g. 0.01, 0.25) we divide by n rather than multiply by the
+    // tick size, as n is exact whereas the tick size may not be (e.g. 9600 * 0.01 gives
+    // 96.00000000000001, but 9600 / 100.0 gives 96.0).
+    private final double ticksPerUnit;
+    private final boolean divide;
+
+    public TickSize(double tickSize) {
+        if ( !(tickSize > 0.0) || Double.isInfinite(tickSize) )
+            throw new IllegalArgumentException("Invalid tick size: " + tickSize);
+
+        this.tickSize = tickSize;
+        double inverse = 1.0 / tickSize;
+        double rounded = Math.rint(inverse);
+        this.divide = rounded >= 1.0 && Math.abs(inverse - rounded) <= inverse * 1e-9;
+        this.ticksPerUnit = divide ? rounded : inverse;
+    }
+
+    public double getTickSize() {
+        return tickSize;
+    }
+
+    public long toTicks(double price) throws Exception {
+        long ticks = Math.round(divide ? price * ticksPerUnit : price / tickSize);
+        if ( Math.abs(toPrice(ticks) - price) > tickSize * 1e-6 )
+            throw new Exception("Price " + price + " is not a multiple of the tick size " + tickSize);
+        return ticks;
+    }
+
+    public double toPrice(long ticks) {
+        return divide ? ticks / ticksPerUnit : ticks * tickSize;
+    }
+}
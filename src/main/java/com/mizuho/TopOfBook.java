@@ -0,0 +1,93 @@
+package com.mizuho;
+
+// The best `depth` levels of each side of a book, best price first, as last published to a
+// DepthBuffer (see OrderBook.readDepth() and ConflatingTopOfBookPublisher). Each reader owns
+// its TopOfBook and the latest state is copied into it, so reading it needs no lock and
+// allocates nothing.
+public class TopOfBook {
+    private final double[] bidPrices;
+    private final long[] bidSizes;
+    private final double[] offerPrices;
+    private final long[] offerSizes;
+    int bidLevels;
+    int offerLevels;
+    long sequence; // of the publication last copied in, 0 if none
+
+    public TopOfBook(int depth) {
+        if ( depth <= 0 )
+            throw new IllegalArgumentException("Invalid depth: " + depth);
+
+        bidPrices = new double[depth];
+        bidSizes = new long[depth];
+        offerPrices = new double[depth];
+        offerSizes = new long[depth];
+    }
+
+    public int getDepth() {
+        return bidPrices.length;
+    }
+
+    // The number of bid levels present, up to the depth.
+    public int getBidLevels() {
+        return bidLevels;
+    }
+
+    public int getOfferLevels() {
+        return offerLevels;
+    }
+
+    // level is 1 based, as for OrderBook.getPriceForSideAndLevel().
+    public double getBidPrice(int level) {
+        return bidPrices[checkLevel(level, bidLevels)];
+    }
+
+    public long getBidSize(int level) {
+        return bidSizes[checkLevel(level, bidLevels)];
+    }
+
+    public double getOfferPrice(int level) {
+        return offerPrices[checkLevel(level, offerLevels)];
+    }
+
+    public long getOfferSize(int level) {
+        return offerSizes[checkLevel(level, offerLevels)];
+    }
+
+    // Increases with every publication, so a change since the last read can be spotted.
+    public long getSequence() {
+        return sequence;
+    }
+
+    double[] bidPrices() {
+        return bidPrices;
+    }
+
+    long[] bidSizes() {
+        return bidSizes;
+    }
+
+    double[] offerPrices() {
+        return offerPrices;
+    }
+
+    long[] offerSizes() {
+        return offerSizes;
+    }
+
+    private static int checkLevel(int level, int levels) {
+        if ( level < 1 || level > levels )
+            throw new IndexOutOfBoundsException("Level " + level + " does not exist");
+        return level - 1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("TopOfBook{sequence=").append(sequence).append(", bids=[");
+        for (int i = 0; i < bidLevels; i++)
+            sb.append(i == 0 ? "" : ", ").append(bidSizes[i]).append('@').append(bidPrices[i]);
+        sb.append("], offers=[");
+        for (int i = 0; i < offerLevels; i++)
+            sb.append(i == 0 ? "" : ", ").append(offerSizes[i]).append('@').append(offerPrices[i]);
+        return sb.append("]}").toString();
+    }
+}
@@ -0,0 +1,8 @@
+package com.mizuho;
+
+// Receives the latest top of book at the subscriber's own rate (see
+// ConflatingTopOfBookPublisher.subscribe()), only when it has changed since the last call.
+// The TopOfBook is reused for the next call.
+public interface TopOfBookListener {
+    void onTopOfBook(TopOfBook topOfBook);
+}
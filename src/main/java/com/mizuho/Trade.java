@@ -0,0 +1,54 @@
+package com.mizuho;
+
+// A fill between an incoming (aggressor) order and an order resting in the book, at the
+// resting order's price.
+//
+// The OrderBook reuses a single Trade instance for every fill so that matching allocates
+// nothing. A TradeListener that wants to keep a trade beyond onTrade() must copy it.
+public class Trade {
+    private long aggressorOrderId;
+    private long passiveOrderId;
+    private char aggressorSide; // B "Bid" or O "Offer"
+    private double price;
+    private long size;
+
+    void set(long aggressorOrderId, long passiveOrderId, char aggressorSide, double price, long size) {
+        this.aggressorOrderId = aggressorOrderId;
+        this.passiveOrderId = passiveOrderId;
+        this.aggressorSide = aggressorSide;
+        this.price = price;
+        this.size = size;
+    }
+
+    public long getAggressorOrderId() {
+        return aggressorOrderId;
+    }
+
+    public long getPassiveOrderId() {
+        return passiveOrderId;
+    }
+
+    public char getAggressorSide() {
+        return aggressorSide;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public Trade copy() {
+        Trade trade = new Trade();
+        trade.set(aggressorOrderId, passiveOrderId, aggressorSide, price, size);
+        return trade;
+    }
+
+    @Override
+    public String toString() {
+        return "Trade{aggressorOrderId=" + aggressorOrderId + ", passiveOrderId=" + passiveOrderId +
+                ", aggressorSide=" + aggressorSide + ", price=" + price + ", size=" + size + "}";
+    }
+}
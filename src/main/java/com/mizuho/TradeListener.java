@@ -0,0 +1,9 @@
+package com.mizuho;
+
+// Receives the trades generated when an incoming order matches resting orders. Called on the
+// thread that added the order, while the book's match lock is held, so implementations should
+// be quick and must not call back into the same OrderBook's addOrder().
+public interface TradeListener {
+    // The Trade instance is reused for the next fill - copy() it to keep it.
+    void onTrade(Trade trade);
+}
@@ -0,0 +1,77 @@
+package com.mizuho;
+
+import java.nio.ByteBuffer;
+
+// A fill - see Trade and MessageFlyweight:
+//   aggressorOrderId(8) passiveOrderId(8) price(8) size(8) aggressorSide(1)
+public class TradeMessage extends MessageFlyweight {
+    public static final int TEMPLATE_ID = 12;
+    public static final int BLOCK_LENGTH = 33;
+
+    private static final int AGGRESSOR_ORDER_ID_OFFSET = 0;
+    private static final int PASSIVE_ORDER_ID_OFFSET = 8;
+    private static final int PRICE_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+    private static final int AGGRESSOR_SIDE_OFFSET = 32;
+
+    public TradeMessage wrap(ByteBuffer buffer, int offset) {
+        wrapBuffer(buffer, offset);
+        return this;
+    }
+
+    public TradeMessage wrapAndApplyHeader(ByteBuffer buffer, int offset, MessageHeader header) {
+        header.wrap(buffer, offset).apply(BLOCK_LENGTH, TEMPLATE_ID);
+        return wrap(buffer, offset + MessageHeader.ENCODED_LENGTH);
+    }
+
+    // Writes every field from the trade, e.g. inside a TradeListener.
+    public TradeMessage set(Trade trade) {
+        return aggressorOrderId(trade.getAggressorOrderId()).passiveOrderId(trade.getPassiveOrderId())
+                .aggressorSide(trade.getAggressorSide()).price(trade.getPrice()).size(trade.getSize());
+    }
+
+    public long aggressorOrderId() {
+        return buffer.getLong(offset + AGGRESSOR_ORDER_ID_OFFSET);
+    }
+
+    public TradeMessage aggressorOrderId(long aggressorOrderId) {
+        buffer.putLong(offset + AGGRESSOR_ORDER_ID_OFFSET, aggressorOrderId);
+        return this;
+    }
+
+    public long passiveOrderId() {
+        return buffer.getLong(offset + PASSIVE_ORDER_ID_OFFSET);
+    }
+
+    public TradeMessage passiveOrderId(long passiveOrderId) {
+        buffer.putLong(offset + PASSIVE_ORDER_ID_OFFSET, passiveOrderId);
+        return this;
+    }
+
+    public char aggressorSide() {
+        return (char)buffer.get(offset + AGGRESSOR_SIDE_OFFSET);
+    }
+
+    public TradeMessage aggressorSide(char aggressorSide) {
+        buffer.put(offset + AGGRESSOR_SIDE_OFFSET, (byte)aggressorSide);
+        return this;
+    }
+
+    public double price() {
+        return buffer.getDouble(offset + PRICE_OFFSET);
+    }
+
+    public TradeMessage price(double price) {
+        buffer.putDouble(offset + PRICE_OFFSET, price);
+        return this;
+    }
+
+    public long size() {
+        return buffer.getLong(offset + SIZE_OFFSET);
+    }
+
+    public TradeMessage size(long size) {
+        buffer.putLong(offset + SIZE_OFFSET, size);
+        return this;
+    }
+}
@@ -0,0 +1,99 @@
+package com.mizuho;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookSnapshotTest {
+    static final char OFFER = 'O';
+    static final char BID = 'B';
+
+    @Test
+    public void testRecoverFromSnapshotAndJournalTail() throws Exception {
+        Path dir = Files.createTempDirectory("recovery");
+        Path journalPath = dir.resolve("journal.bin");
+        Path snapshotPath = dir.resolve("snapshot.bin");
+        try {
+            try (CommandJournal journal = CommandJournal.open(journalPath, 1 << 16, 0)) {
+                OrderBook orderBook = new OrderBook();
+                orderBook.setJournal(journal);
+                try (SingleWriterOrderBook writer = new SingleWriterOrderBook(orderBook)) {
+                    writer.addOrder(new Order(1, 96.0, BID, 100L));
+                    writer.addOrder(new Order(2, 96.0, BID, 200L));
+                    writer.addOrder(new Order(3, 99.0, BID, 100L));
+                    writer.addOrder(new Order(4, 101.0, OFFER, 100L));
+                    writer.snapshot(snapshotPath, journal).get();
+
+                    // The journal tail after the snapshot
+                    writer.removeOrder(3);
+                    writer.modifyOrderSize(1, 50L);
+                    writer.addOrder(new Order(5, 100.0, OFFER, 70L)).get();
+                }
+            }
+
+            try (CommandJournal journal = CommandJournal.open(journalPath, 1 << 16, 0)) {
+                OrderBook recovered = new OrderBook();
+                BookSnapshot.recover(snapshotPath, journal, recovered);
+
+                List<Order> bids = recovered.getOrdersForSide(BID);
+                assertThat(bids.size(), equalTo(2));
+                assertThat(bids.get(0).getId(), equalTo(1L));
+                assertThat(bids.get(0).getSize(), equalTo(50L));
+                assertThat(bids.get(1).getId(), equalTo(2L));
+                assertThat(recovered.getPriceForSideAndLevel(OFFER, 1), equalTo(100.0));
+                assertThat(recovered.getSizeForSideAndLevel(OFFER, 2), equalTo(100L));
+            }
+        }
+        finally {
+            Files.deleteIfExists(journalPath);
+            Files.deleteIfExists(snapshotPath);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testCaptureIsWrittenAsOfWhenItWasTaken() throws Exception {
+        Path path = Files.createTempFile("snapshot", ".bin");
+        try {
+            OrderBook orderBook = new OrderBook();
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L, 7));
+            orderBook.addOrder(new Order(2, 101.0, OFFER, 100L));
+            BookSnapshot snapshot = BookSnapshot.capture(orderBook, 42);
+
+            // Changes after the capture are not in the file, however late it is written
+            orderBook.removeOrder(1);
+            orderBook.addOrder(new Order(3, 95.0, BID, 300L));
+            snapshot.writeTo(path);
+
+            OrderBook loaded = new OrderBook();
+            assertThat(BookSnapshot.load(path, loaded), equalTo(42L));
+            List<Order> bids = loaded.getOrdersForSide(BID);
+            assertThat(bids.size(), equalTo(1));
+            assertThat(bids.get(0).getId(), equalTo(1L));
+            assertThat(loaded.cancelOrdersForOwner(7), equalTo(1));
+            assertThat(loaded.getOrdersForSide(OFFER).size(), equalTo(1));
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testTickSizeMustMatch() throws Exception {
+        Path path = Files.createTempFile("snapshot", ".bin");
+        try {
+            BookSnapshot.write(new OrderBook(0.01), path, 0);
+            Exception exception = assertThrows(Exception.class, () -> BookSnapshot.load(path, new OrderBook(0.5)));
+            assertThat(exception.getMessage(), equalTo("Snapshot tick size 0.01 does not match the book's tick size 0.5"));
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.mizuho;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandJournalTest {
+    static final char OFFER = 'O';
+    static final char BID = 'B';
+
+    @Test
+    public void testReplayRebuildsBook() throws Exception {
+        Path path = Files.createTempFile("journal", ".bin");
+        Files.delete(path); // the journal creates and sizes the file itself
+        try {
+            try (CommandJournal journal = CommandJournal.open(path, 1 << 16, 100)) {
+                OrderBook orderBook = new OrderBook();
+                orderBook.setJournal(journal);
+                orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+                orderBook.addOrder(new Order(2, 99.0, BID, 100L));
+                orderBook.addOrder(new Order(3, 96.0, BID, 300L));
+                orderBook.addOrder(new Order(4, 101.0, OFFER, 100L));
+                orderBook.addOrder(new Order(5, 99.0, OFFER, 40L)); // partially fills order 2
+                orderBook.modifyOrderSize(3, 500L);
+                orderBook.removeOrder(1);
+                orderBook.removeOrder(6); // unknown order - not journaled
+            }
+
+            // Reopen as after a restart, rebuild and carry on appending
+            try (CommandJournal journal = CommandJournal.open(path, 1 << 16, 100)) {
+                OrderBook orderBook = new OrderBook();
+                assertThat(journal.replay(orderBook), equalTo(7L));
+                orderBook.setJournal(journal);
+                orderBook.addOrder(new Order(6, 102.0, OFFER, 10L));
+
+                List<Order> bids = orderBook.getOrdersForSide(BID);
+                assertThat(bids.size(), equalTo(2));
+                assertThat(bids.get(0).getId(), equalTo(2L));
+                assertThat(bids.get(0).getSize(), equalTo(60L));
+                assertThat(bids.get(1).getSize(), equalTo(500L));
+                assertThat(orderBook.getOrdersForSide(OFFER).size(), equalTo(2));
+            }
+
+            try (CommandJournal journal = CommandJournal.open(path, 1 << 16, 0)) {
+                assertThat(journal.replay(new OrderBook()), equalTo(8L));
+            }
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testReplayKeepsOwnersAndMassCancels() throws Exception {
+        Path path = Files.createTempFile("journal", ".bin");
+        Files.delete(path);
+        try {
+            try (CommandJournal journal = CommandJournal.open(path, 1 << 16, 0)) {
+                OrderBook orderBook = new OrderBook();
+                orderBook.setJournal(journal);
+                orderBook.addOrder(new Order(1, 96.0, BID, 100L, 7));
+                orderBook.addOrder(new Order(2, 96.0, BID, 100L));
+                orderBook.addOrder(new Order(3, 95.0, BID, 100L, 7));
+                orderBook.addOrder(new Order(4, 101.0, OFFER, 100L, 8));
+                orderBook.replaceOrder(4, 102.0, 50L); // keeps its owner
+                orderBook.cancelOrdersInRange(BID, 95.0, 95.0);
+            }
+
+            try (CommandJournal journal = CommandJournal.open(path, 1 << 16, 0)) {
+                OrderBook orderBook = new OrderBook();
+                journal.replay(orderBook);
+                assertThat(orderBook.getOrdersForSide(BID).size(), equalTo(2));
+                assertThat(orderBook.cancelOrdersForOwner(7), equalTo(1));
+                assertThat(orderBook.cancelOrdersForOwner(8), equalTo(1));
+                assertThat(orderBook.getOrdersForSide(BID).get(0).getId(), equalTo(2L));
+                assertTrue(orderBook.getOrdersForSide(OFFER).isEmpty());
+            }
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testReplayOfReplaceAndRequeue() throws Exception {
+        Path path = Files.createTempFile("journal", ".bin");
+        Files.delete(path);
+        try (CommandJournal journal = CommandJournal.open(path, 1 << 16, 0)) {
+            OrderBook orderBook = new OrderBook();
+            orderBook.setRequeueOnSizeIncrease(true);
+            orderBook.setJournal(journal);
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(3, 97.0, OFFER, 100L));
+            orderBook.modifyOrderSize(1, 150L);
+            orderBook.replaceOrder(2, 97.0, 50L); // fills against order 3
+            orderBook.replaceOrder(3, 98.0, 50L);
+
+            OrderBook replayed = new OrderBook();
+            replayed.setRequeueOnSizeIncrease(true);
+            journal.replay(replayed);
+
+            for (char side : new char[] {BID, OFFER}) {
+                List<Order> expected = orderBook.getOrdersForSide(side);
+                List<Order> actual = replayed.getOrdersForSide(side);
+                assertThat(actual.size(), equalTo(expected.size()));
+                for (int i = 0; i < expected.size(); i++) {
+                    assertThat(actual.get(i).getId(), equalTo(expected.get(i).getId()));
+                    assertThat(actual.get(i).getPrice(), equalTo(expected.get(i).getPrice()));
+                    assertThat(actual.get(i).getSize(), equalTo(expected.get(i).getSize()));
+                }
+            }
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testReplayOfCancelsRacingRestingAdds() throws Exception {
+        // A canceller takes each order as soon as it can find it, on another thread to the adder.
+        // Its modify and cancel must be journaled after the add, or replay would differ.
+        Path path = Files.createTempFile("journal", ".bin");
+        Files.delete(path);
+        try (CommandJournal journal = CommandJournal.open(path, 1 << 20, 0)) {
+            OrderBook orderBook = new OrderBook();
+            orderBook.setJournal(journal);
+            int orders = 2000;
+            Thread adder = new Thread(() -> {
+                try {
+                    for (int id = 1; id <= orders; id++)
+                        orderBook.addOrder(new Order(id, 96.0 + id % 4, BID, 100L));
+                }
+                catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            adder.start();
+            for (int id = 1; id <= orders; id++) {
+                while ( true ) {
+                    try {
+                        orderBook.modifyOrderSize(id, 50L);
+                        break;
+                    }
+                    catch (Exception e) {
+                        // not added yet
+                    }
+                }
+                if ( id % 2 == 0 )
+                    orderBook.removeOrder(id);
+            }
+            adder.join();
+
+            OrderBook replayed = new OrderBook();
+            journal.replay(replayed);
+            List<Order> expected = orderBook.getOrdersForSide(BID);
+            List<Order> actual = replayed.getOrdersForSide(BID);
+            assertThat(actual.size(), equalTo(orders / 2));
+            assertThat(actual.size(), equalTo(expected.size()));
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat(actual.get(i).getId(), equalTo(expected.get(i).getId()));
+                assertThat(actual.get(i).getSize(), equalTo(expected.get(i).getSize()));
+            }
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testJournalFull() throws Exception {
+        Path path = Files.createTempFile("journal", ".bin");
+        Files.delete(path);
+        try (CommandJournal journal = CommandJournal.open(path, CommandJournal.HEADER_SIZE + CommandJournal.ADD_SIZE, 0)) {
+            journal.appendAdd(1, 9600, BID, 100);
+            Exception exception = assertThrows(Exception.class, () -> journal.appendCancel(1));
+            assertThat(exception.getMessage(), equalTo("Journal is full"));
+            assertThat(journal.replay(new OrderBook()), equalTo(1L));
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testFullJournalLeavesBookUnchanged() throws Exception {
+        Path path = Files.createTempFile("journal", ".bin");
+        Files.delete(path);
+        try (CommandJournal journal = CommandJournal.open(path, CommandJournal.HEADER_SIZE + 2 * CommandJournal.ADD_SIZE, 0)) {
+            OrderBook orderBook = new OrderBook();
+            orderBook.setJournal(journal);
+            orderBook.addOrder(new Order(1, 100.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 101.0, OFFER, 100L));
+
+            // Every command fails without changing anything
+            assertThrows(Exception.class, () -> orderBook.removeOrder(1));
+            assertThrows(Exception.class, () -> orderBook.modifyOrderSize(1, 50L));
+            assertThrows(Exception.class, () -> orderBook.addOrder(new Order(3, 101.0, BID, 10L))); // would fill order 2
+            assertThat(orderBook.getPriceForSideAndLevel(BID, 1), equalTo(100.0));
+            assertThat(orderBook.getSizeForSideAndLevel(BID, 1), equalTo(100L));
+            assertThat(orderBook.getSizeForSideAndLevel(OFFER, 1), equalTo(100L));
+            Exception exception = assertThrows(Exception.class, () -> orderBook.addOrder(new Order(1, 99.0, BID, 10L)));
+            assertThat(exception.getMessage(), equalTo("OrderBook already contains order with id: 1"));
+
+            assertThat(journal.replay(new OrderBook()), equalTo(2L));
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testReplaceIsJournaledWholeOrNotAtAll() throws Exception {
+        Path path = Files.createTempFile("journal", ".bin");
+        Files.delete(path);
+        // Room for a cancel, but not for a cancel and its replacement add
+        try (CommandJournal journal = CommandJournal.open(path, CommandJournal.HEADER_SIZE + 2 * CommandJournal.ADD_SIZE + CommandJournal.CANCEL_SIZE, 0)) {
+            OrderBook orderBook = new OrderBook();
+            orderBook.setJournal(journal);
+            orderBook.addOrder(new Order(1, 100.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 101.0, OFFER, 100L));
+
+            // Neither a move nor a replace that crosses loses the order
+            assertThrows(Exception.class, () -> orderBook.replaceOrder(1, 99.0, 100L));
+            assertThrows(Exception.class, () -> orderBook.replaceOrder(1, 101.0, 100L));
+            assertThat(orderBook.getPriceForSideAndLevel(BID, 1), equalTo(100.0));
+            assertThat(orderBook.getSizeForSideAndLevel(BID, 1), equalTo(100L));
+            assertThrows(Exception.class, () -> orderBook.getPriceForSideAndLevel(BID, 2)); // no level left at 99
+            assertThat(orderBook.getSizeForSideAndLevel(OFFER, 1), equalTo(100L));
+            assertThat(journal.replay(new OrderBook()), equalTo(2L));
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testMassCancelStoppedByFullJournalMatchesJournal() throws Exception {
+        Path path = Files.createTempFile("journal", ".bin");
+        Files.delete(path);
+        try (CommandJournal journal = CommandJournal.open(path, CommandJournal.HEADER_SIZE + 4 * CommandJournal.ADD_SIZE + 2 * CommandJournal.CANCEL_SIZE, 0)) {
+            OrderBook orderBook = new OrderBook();
+            orderBook.setJournal(journal);
+            orderBook.addOrder(new Order(1, 100.0, BID, 10L));
+            orderBook.addOrder(new Order(2, 100.0, BID, 20L));
+            orderBook.addOrder(new Order(3, 100.0, BID, 30L));
+            orderBook.addOrder(new Order(4, 99.0, BID, 40L));
+
+            // Only two cancels fit, so the pass stops after orders 1 and 2
+            assertThrows(Exception.class, () -> orderBook.cancelAllOrders(BID));
+            assertThat(orderBook.getSizeForSideAndLevel(BID, 1), equalTo(30L));
+            assertThat(orderBook.getSizeForSideAndLevel(BID, 2), equalTo(40L));
+            assertThat(orderBook.getOrdersForSide(BID).size(), equalTo(2));
+
+            OrderBook replayed = new OrderBook();
+            assertThat(journal.replay(replayed), equalTo(6L));
+            assertThat(replayed.getSizeForSideAndLevel(BID, 1), equalTo(30L));
+            assertThat(replayed.getSizeForSideAndLevel(BID, 2), equalTo(40L));
+            assertThat(replayed.getOrdersForSide(BID).size(), equalTo(2));
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testAppendAfterTornRecordLeavesNothingBehind() throws Exception {
+        Path path = Files.createTempFile("journal", ".bin");
+        Files.delete(path);
+        try {
+            try (CommandJournal journal = CommandJournal.open(path, 1024, 0)) {
+                journal.appendAdd(1, 10000, BID, 100L);
+                journal.appendReplace(1, 9900, BID, 50L, 0);
+            }
+            // A crash between the replace's add and its cancel being committed: the add is
+            // complete, but follows a cancel whose template id was never written
+            byte[] bytes = Files.readAllBytes(path);
+            int templateId = CommandJournal.HEADER_SIZE + CommandJournal.ADD_SIZE + 2;
+            bytes[templateId] = 0;
+            bytes[templateId + 1] = 0;
+            Files.write(path, bytes);
+
+            try (CommandJournal journal = CommandJournal.open(path, 1024, 0)) {
+                assertThat(journal.replay(new OrderBook()), equalTo(1L));
+                journal.appendCancel(1); // exactly over the torn cancel
+            }
+            try (CommandJournal journal = CommandJournal.open(path, 1024, 0)) {
+                OrderBook orderBook = new OrderBook();
+                assertThat(journal.replay(orderBook), equalTo(2L));
+                assertEquals(0, orderBook.getOrdersForSide(BID).size());
+                assertThat(journal.getPosition(), equalTo((long)(CommandJournal.HEADER_SIZE + CommandJournal.ADD_SIZE + CommandJournal.CANCEL_SIZE)));
+            }
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testFullJournalFailsOnlyTheRestOfAGroupedBatch() throws Exception {
+        Path path = Files.createTempFile("journal", ".bin");
+        Files.delete(path);
+        try (CommandJournal journal = CommandJournal.open(path, CommandJournal.HEADER_SIZE + 3 * CommandJournal.ADD_SIZE, 0)) {
+            OrderBook orderBook = new OrderBook();
+            orderBook.setJournal(journal);
+
+            // None of these cross, so they are applied a level at a time - 95, 96 then the offer
+            List<String> results = new ArrayList<>();
+            OrderCommand[] commands = {
+                    new OrderCommand().setAdd(1, 95.0, BID, 10),
+                    new OrderCommand().setAdd(3, 96.0, BID, 30),
+                    new OrderCommand().setAdd(5, 101.0, OFFER, 50),
+                    new OrderCommand().setAdd(2, 95.0, BID, 20),
+                    new OrderCommand().setAdd(4, 96.0, BID, 40) };
+            int succeeded = orderBook.applyBatch(commands, commands.length,
+                    (id, error) -> results.add(id + ":" + (error == null ? "ok" : error.getMessage())));
+            assertThat(succeeded, equalTo(3));
+            assertThat(results, equalTo(List.of("1:ok", "3:ok", "5:Journal is full", "2:ok", "4:Journal is full")));
+            assertThat(orderBook.getSizeForSideAndLevel(BID, 1), equalTo(30L));
+            assertThat(orderBook.getSizeForSideAndLevel(BID, 2), equalTo(30L));
+            assertTrue(orderBook.getOrdersForSide(OFFER).isEmpty());
+            assertThat(journal.replay(new OrderBook()), equalTo(3L));
+
+            // Nothing is left over for the next batch
+            orderBook.setJournal(null);
+            results.clear();
+            orderBook.applyBatch(new OrderCommand[] { new OrderCommand().setCancel(1), new OrderCommand().setCancel(2) }, 2,
+                    (id, error) -> results.add(id + ":" + (error == null ? "ok" : error.getMessage())));
+            assertThat(results, equalTo(List.of("1:ok", "2:ok")));
+            assertThat(orderBook.getOrdersForSide(BID).size(), equalTo(1));
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testForcedInTheBackgroundEverySyncEveryRecords() throws Exception {
+        Path path = Files.createTempFile("journal", ".bin");
+        Files.delete(path);
+        try (CommandJournal journal = CommandJournal.open(path, 1 << 16, 2)) {
+            journal.appendAdd(1, 9600, BID, 100L);
+            assertThat(journal.getDurablePosition(), equalTo(0L)); // not a whole syncEvery yet
+
+            journal.appendCancel(1);
+            long end = journal.getPosition();
+            long deadline = System.currentTimeMillis() + 5000;
+            while ( journal.getDurablePosition() < end && System.currentTimeMillis() < deadline )
+                Thread.sleep(1);
+            assertThat(journal.getDurablePosition(), equalTo(end));
+
+            journal.appendAdd(2, 9600, BID, 100L);
+            journal.flush();
+            assertThat(journal.getDurablePosition(), equalTo(journal.getPosition()));
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
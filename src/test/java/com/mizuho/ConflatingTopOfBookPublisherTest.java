@@ -0,0 +1,139 @@
+package com.mizuho;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConflatingTopOfBookPublisherTest {
+    static final char OFFER = 'O';
+    static final char BID = 'B';
+
+    @Test
+    public void testPollSeesOnlyTheLatestState() throws Exception {
+        OrderBook orderBook = new OrderBook();
+        try (ConflatingTopOfBookPublisher publisher = new ConflatingTopOfBookPublisher(orderBook, 2)) {
+            TopOfBook topOfBook = new TopOfBook(2);
+            assertFalse(publisher.poll(topOfBook));
+
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 99.0, BID, 200L));
+            orderBook.addOrder(new Order(3, 94.0, BID, 300L));
+            orderBook.addOrder(new Order(4, 101.0, OFFER, 400L));
+            orderBook.modifyOrderSize(2, 250L);
+
+            // Five changes, one poll
+            assertTrue(publisher.poll(topOfBook));
+            assertThat(topOfBook.getBidLevels(), equalTo(2));
+            assertThat(topOfBook.getBidPrice(1), equalTo(99.0));
+            assertThat(topOfBook.getBidSize(1), equalTo(250L));
+            assertThat(topOfBook.getBidPrice(2), equalTo(96.0));
+            assertThat(topOfBook.getOfferLevels(), equalTo(1));
+            assertThat(topOfBook.getOfferPrice(1), equalTo(101.0));
+            assertFalse(publisher.poll(topOfBook));
+
+            // The best bid goes and the third level moves up
+            orderBook.removeOrder(2);
+            assertTrue(publisher.poll(topOfBook));
+            assertThat(topOfBook.getBidPrice(1), equalTo(96.0));
+            assertThat(topOfBook.getBidPrice(2), equalTo(94.0));
+            assertThat(topOfBook.getBidSize(2), equalTo(300L));
+            assertThrows(IndexOutOfBoundsException.class, () -> topOfBook.getOfferPrice(2));
+        }
+    }
+
+    @Test
+    public void testSubscriberCalledBackWithChanges() throws Exception {
+        OrderBook orderBook = new OrderBook();
+        try (ConflatingTopOfBookPublisher publisher = new ConflatingTopOfBookPublisher(orderBook, 1)) {
+            CountDownLatch seen = new CountDownLatch(1);
+            AtomicReference<String> last = new AtomicReference<>();
+            publisher.subscribe(topOfBook -> {
+                if ( topOfBook.getBidLevels() == 1 && topOfBook.getOfferLevels() == 1 ) {
+                    last.set(topOfBook.getBidSize(1) + "@" + topOfBook.getBidPrice(1) + " " +
+                            topOfBook.getOfferSize(1) + "@" + topOfBook.getOfferPrice(1));
+                    seen.countDown();
+                }
+            }, 1, TimeUnit.MILLISECONDS);
+
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 97.0, OFFER, 200L));
+
+            assertTrue(seen.await(5, TimeUnit.SECONDS));
+            assertThat(last.get(), equalTo("100@96.0 200@97.0"));
+        }
+    }
+
+    @Test
+    public void testSlowOrFailingSubscriberDoesNotStopOthers() throws Exception {
+        OrderBook orderBook = new OrderBook();
+        try (ConflatingTopOfBookPublisher publisher = new ConflatingTopOfBookPublisher(orderBook, 1)) {
+            CountDownLatch release = new CountDownLatch(1);
+            publisher.subscribe(topOfBook -> {
+                try {
+                    release.await(); // stuck until the end of the test
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, 1, TimeUnit.MILLISECONDS);
+
+            CountDownLatch failed = new CountDownLatch(1);
+            CountDownLatch seenAfterFailure = new CountDownLatch(1);
+            ConflatingTopOfBookPublisher.Subscription failing = publisher.subscribe(topOfBook -> {
+                if ( failed.getCount() > 0 ) {
+                    failed.countDown();
+                    throw new IllegalStateException("first call fails");
+                }
+                seenAfterFailure.countDown();
+            }, 1, TimeUnit.MILLISECONDS);
+
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            assertTrue(failed.await(5, TimeUnit.SECONDS));
+            orderBook.addOrder(new Order(2, 97.0, OFFER, 200L));
+            assertTrue(seenAfterFailure.await(5, TimeUnit.SECONDS));
+
+            failing.close();
+            assertTrue(failing.isClosed());
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testReaderNeverSeesATornUpdate() throws Exception {
+        // The writer keeps both bid levels the same size, so any mix of two publications shows
+        OrderBook orderBook = new OrderBook();
+        try (ConflatingTopOfBookPublisher publisher = new ConflatingTopOfBookPublisher(orderBook, 2)) {
+            orderBook.addOrder(new Order(1, 96.0, BID, 1L));
+            orderBook.addOrder(new Order(2, 95.0, BID, 1L));
+
+            Thread writer = new Thread(() -> {
+                try {
+                    for (long size = 2; size < 200_000; size++) {
+                        orderBook.modifyOrderSize(1, size);
+                        orderBook.modifyOrderSize(2, size);
+                    }
+                }
+                catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            writer.start();
+
+            TopOfBook topOfBook = new TopOfBook(2);
+            while ( writer.isAlive() ) {
+                if ( publisher.poll(topOfBook) ) {
+                    long first = topOfBook.getBidSize(1);
+                    long second = topOfBook.getBidSize(2);
+                    assertTrue(first == second || first == second + 1, first + " vs " + second);
+                }
+            }
+            writer.join();
+        }
+    }
+}
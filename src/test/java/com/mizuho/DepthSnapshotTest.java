@@ -0,0 +1,92 @@
+package com.mizuho;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DepthSnapshotTest {
+    static final char OFFER = 'O';
+    static final char BID = 'B';
+
+    @Test
+    public void testReadDepth() throws Exception {
+        OrderBook orderBook = new OrderBook();
+        orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+        orderBook.enableDepthSnapshots(2); // picks up what is already in the book
+
+        TopOfBook depth = new TopOfBook(2);
+        assertTrue(orderBook.readDepth(depth));
+        assertThat(depth.getBidLevels(), equalTo(1));
+        assertThat(depth.getBidPrice(1), equalTo(96.0));
+        assertFalse(orderBook.readDepth(depth));
+
+        orderBook.addOrder(new Order(2, 97.0, BID, 200L));
+        orderBook.addOrder(new Order(3, 95.0, BID, 300L));
+        orderBook.addOrder(new Order(4, 98.0, OFFER, 400L));
+        orderBook.modifyOrderSize(2, 250L);
+        assertTrue(orderBook.readDepth(depth));
+        assertThat(depth.getBidPrice(1), equalTo(97.0));
+        assertThat(depth.getBidSize(1), equalTo(250L));
+        assertThat(depth.getBidPrice(2), equalTo(96.0));
+        assertThat(depth.getOfferSize(1), equalTo(400L));
+
+        orderBook.removeOrder(4);
+        assertTrue(orderBook.readDepth(depth));
+        assertThat(depth.getOfferLevels(), equalTo(0));
+    }
+
+    @Test
+    public void testReadDepthNotEnabled() {
+        Exception exception = assertThrows(Exception.class, () -> new OrderBook().readDepth(new TopOfBook(1)));
+        assertThat(exception.getMessage(), equalTo("Depth snapshots are not enabled"));
+    }
+
+    @Test
+    public void testReaderOnlySeesCompleteUpdates() throws Exception {
+        // Each add matches everything on the other side and rests the remainder, so the book is
+        // only ever "offer 100@101" or "bid 50@101" between updates. Part way through a match it
+        // is empty, which a reader must never see.
+        OrderBook orderBook = new OrderBook();
+        orderBook.enableDepthSnapshots(1);
+        orderBook.addOrder(new Order(1, 101.0, OFFER, 100L));
+
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            try {
+                for (long id = 2; id < 200_000; id += 2) {
+                    orderBook.addOrder(new Order(id, 101.0, BID, 150L));
+                    orderBook.addOrder(new Order(id + 1, 101.0, OFFER, 150L));
+                }
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            finally {
+                done.set(true);
+            }
+        });
+        writer.start();
+
+        TopOfBook depth = new TopOfBook(1);
+        int reads = 0;
+        while ( !done.get() ) {
+            if ( orderBook.readDepth(depth) ) {
+                reads++;
+                if ( depth.getBidLevels() == 1 ) {
+                    assertThat(depth.getOfferLevels(), equalTo(0));
+                    assertThat(depth.getBidSize(1), equalTo(50L));
+                }
+                else {
+                    assertThat(depth.getOfferLevels(), equalTo(1));
+                    assertThat(depth.getOfferSize(1), equalTo(100L));
+                }
+            }
+        }
+        writer.join();
+        assertTrue(reads > 0);
+    }
+}
@@ -0,0 +1,63 @@
+package com.mizuho;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyRecorderTest {
+
+    @Test
+    public void testRecordsEachPublicOperationOnce() throws Exception {
+        LatencyRecorder recorder = new LatencyRecorder();
+        OrderBook orderBook = new OrderBook();
+        orderBook.setLatencyRecorder(recorder);
+
+        orderBook.addOrder(new Order(1, 10.5, 'B', 100));
+        orderBook.addOrder(new Order(2, 10.5, 'B', 200));
+        orderBook.modifyOrderSize(1, 50);
+        orderBook.modifyOrderSize(2, 0); // recorded as a modify only
+        orderBook.getPriceForSideAndLevel('B', 1);
+        orderBook.getSizeForSideAndLevel('B', 1);
+        orderBook.getOrdersForSide('B');
+        orderBook.removeOrder(1);
+
+        assertThat(recorder.getIntervalHistogram(LatencyRecorder.Operation.ADD_ORDER).getTotalCount(), equalTo(2L));
+        assertThat(recorder.getIntervalHistogram(LatencyRecorder.Operation.MODIFY_ORDER_SIZE).getTotalCount(), equalTo(2L));
+        assertThat(recorder.getIntervalHistogram(LatencyRecorder.Operation.REMOVE_ORDER).getTotalCount(), equalTo(1L));
+        assertThat(recorder.getIntervalHistogram(LatencyRecorder.Operation.GET_PRICE_FOR_SIDE_AND_LEVEL).getTotalCount(), equalTo(1L));
+        assertThat(recorder.getIntervalHistogram(LatencyRecorder.Operation.GET_SIZE_FOR_SIDE_AND_LEVEL).getTotalCount(), equalTo(1L));
+        assertThat(recorder.getIntervalHistogram(LatencyRecorder.Operation.GET_ORDERS_FOR_SIDE).getTotalCount(), equalTo(1L));
+
+        // Each interval only holds what was recorded since the last one
+        Histogram interval = recorder.getIntervalHistogram(LatencyRecorder.Operation.ADD_ORDER);
+        assertThat(interval.getTotalCount(), equalTo(0L));
+    }
+
+    @Test
+    public void testReporterWritesCsv() throws Exception {
+        Path csv = Files.createTempFile("latency", ".csv");
+        Files.delete(csv);
+        LatencyRecorder recorder = new LatencyRecorder();
+        OrderBook orderBook = new OrderBook();
+        orderBook.setLatencyRecorder(recorder);
+
+        try (LatencyReporter reporter = new LatencyReporter(recorder, csv, 1, TimeUnit.HOURS)) {
+            orderBook.addOrder(new Order(1, 10.5, 'B', 100));
+            reporter.report();
+        }
+
+        List<String> lines = Files.readAllLines(csv);
+        assertThat(lines.size(), equalTo(2));
+        assertThat(lines.get(0), equalTo(LatencyReporter.CSV_HEADER));
+        assertTrue(lines.get(1).contains(",ADD_ORDER,1,"));
+        Files.delete(csv);
+    }
+}
@@ -0,0 +1,81 @@
+package com.mizuho;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashIndexTest {
+
+    @Test
+    public void testPutGetRemove() {
+        LongHashIndex<String> index = new LongHashIndex<>();
+        assertNull(index.put(1, "one"));
+        assertNull(index.put(-5, "minus five"));
+        assertNull(index.put(0, "zero"));
+
+        assertThat(index.get(1), equalTo("one"));
+        assertThat(index.get(-5), equalTo("minus five"));
+        assertThat(index.get(0), equalTo("zero"));
+        assertNull(index.get(2));
+
+        assertThat(index.put(1, "uno"), equalTo("one"));
+        assertThat(index.putIfAbsent(1, "ein"), equalTo("uno"));
+        assertThat(index.size(), equalTo(3));
+
+        assertThat(index.remove(1), equalTo("uno"));
+        assertNull(index.remove(1));
+        assertNull(index.get(1));
+        assertThat(index.size(), equalTo(2));
+    }
+
+    @Test
+    public void testMatchesHashMapUnderRandomAddsAndRemoves() {
+        // Small key range so that probe runs collide, wrap around the table and get shifted back on removal
+        LongHashIndex<Long> index = new LongHashIndex<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000);
+            if ( random.nextInt(3) == 0 ) {
+                assertThat(index.remove(key), equalTo(expected.remove(key)));
+            }
+            else {
+                Long value = (long)i;
+                assertThat(index.put(key, value), equalTo(expected.put(key, value)));
+            }
+        }
+
+        assertThat(index.size(), equalTo(expected.size()));
+        for (long key = 0; key < 5_000; key++)
+            assertThat(index.get(key), equalTo(expected.get(key)));
+    }
+
+    @Test
+    public void testConcurrentIndexFromSeveralThreads() throws Exception {
+        ConcurrentLongHashIndex<Long> index = new ConcurrentLongHashIndex<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long base = t * 1_000_000L;
+            threads[t] = new Thread(() -> {
+                for (long id = base; id < base + 50_000; id++)
+                    index.put(id, id);
+                for (long id = base; id < base + 50_000; id += 2)
+                    index.remove(id);
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertThat(index.size(), equalTo(threads.length * 25_000));
+        assertNull(index.get(2_000_000L));
+        assertThat(index.get(2_000_001L), equalTo(2_000_001L));
+    }
+}
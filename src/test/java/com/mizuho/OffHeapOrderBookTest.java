@@ -0,0 +1,104 @@
+package com.mizuho;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapOrderBookTest {
+    static final char OFFER = 'O';
+    static final char BID = 'B';
+
+    @Test
+    public void testAddMatchModifyAndRemove() throws Exception {
+        OffHeapOrderBook orderBook = new OffHeapOrderBook();
+        List<String> trades = new ArrayList<>();
+        orderBook.addTradeListener(t -> trades.add(t.getAggressorOrderId() + "/" + t.getPassiveOrderId() + " " + t.getSize() + "@" + t.getPrice()));
+
+        orderBook.addOrder(new Order(1, 100.0, OFFER, 100L));
+        orderBook.addOrder(new Order(2, 100.0, OFFER, 200L));
+        orderBook.addOrder(new Order(3, 101.0, OFFER, 300L));
+        orderBook.addOrder(new Order(4, 99.0, BID, 50L));
+        assertThrows(Exception.class, () -> orderBook.addOrder(new Order(1, 98.0, BID, 10L)));
+
+        orderBook.modifyOrderSize(2, 150L);
+        assertThat(orderBook.getSizeForSideAndLevel(OFFER, 1), equalTo(250L));
+
+        // Fills 1 and part of 2, in time priority, and the rest of it rests at 100.0
+        orderBook.addOrder(new Order(5, 100.0, BID, 400L));
+        assertThat(trades, equalTo(List.of("5/1 100@100.0", "5/2 150@100.0")));
+        assertThat(orderBook.getPriceForSideAndLevel(OFFER, 1), equalTo(101.0));
+        assertThat(orderBook.getPriceForSideAndLevel(BID, 1), equalTo(100.0));
+        assertThat(orderBook.getSizeForSideAndLevel(BID, 1), equalTo(150L));
+        assertThat(orderBook.getPriceForSideAndLevel(BID, 2), equalTo(99.0));
+        assertThrows(Exception.class, () -> orderBook.getPriceForSideAndLevel(BID, 3));
+
+        orderBook.removeOrder(5);
+        orderBook.modifyOrderSize(4, 0L);
+        assertTrue(orderBook.getOrdersForSide(BID).isEmpty());
+        assertThat(orderBook.getOrderCount(), equalTo(1));
+        assertThrows(Exception.class, () -> orderBook.modifyOrderSize(5, 10L));
+    }
+
+    @Test
+    public void testMatchesOrderBookUnderRandomUpdates() throws Exception {
+        // Enough orders for the slab to add chunks and for its id index to grow, with slots reused
+        Random random = new Random(23);
+        OrderBook expected = new OrderBook();
+        OffHeapOrderBook actual = new OffHeapOrderBook();
+        List<String> expectedTrades = new ArrayList<>();
+        List<String> actualTrades = new ArrayList<>();
+        expected.addTradeListener(t -> expectedTrades.add(t.getAggressorOrderId() + "/" + t.getPassiveOrderId() + " " + t.getSize()));
+        actual.addTradeListener(t -> actualTrades.add(t.getAggressorOrderId() + "/" + t.getPassiveOrderId() + " " + t.getSize()));
+
+        for (long id = 1; id <= 200_000; id++) {
+            int op = random.nextInt(10);
+            long target = 1 + random.nextInt((int)id);
+            if ( op < 6 ) {
+                char side = random.nextBoolean() ? BID : OFFER;
+                // Mostly passive, with a few orders that cross
+                double price = side == BID ? 90 + random.nextInt(11) : 99 + random.nextInt(11);
+                Order order = new Order(id, price, side, 1 + random.nextInt(100));
+                expected.addOrder(order);
+                actual.addOrder(order);
+            }
+            else if ( op < 8 ) {
+                expected.removeOrder(target);
+                actual.removeOrder(target);
+            }
+            else {
+                long size = random.nextInt(100);
+                boolean found = true;
+                try {
+                    expected.modifyOrderSize(target, size);
+                }
+                catch (Exception e) {
+                    found = false;
+                }
+                if ( found )
+                    actual.modifyOrderSize(target, size);
+                else
+                    assertThrows(Exception.class, () -> actual.modifyOrderSize(target, size));
+            }
+        }
+
+        assertThat(actualTrades, equalTo(expectedTrades));
+        for (char side : new char[] {BID, OFFER}) {
+            List<Order> expectedOrders = expected.getOrdersForSide(side);
+            List<Order> actualOrders = actual.getOrdersForSide(side);
+            assertThat(actualOrders.size(), equalTo(expectedOrders.size()));
+            for (int i = 0; i < expectedOrders.size(); i++) {
+                assertThat(actualOrders.get(i).getId(), equalTo(expectedOrders.get(i).getId()));
+                assertThat(actualOrders.get(i).getPrice(), equalTo(expectedOrders.get(i).getPrice()));
+                assertThat(actualOrders.get(i).getSize(), equalTo(expectedOrders.get(i).getSize()));
+            }
+            for (int level = 1; level <= 5; level++)
+                assertThat(actual.getSizeForSideAndLevel(side, level), equalTo(expected.getSizeForSideAndLevel(side, level)));
+        }
+    }
+}
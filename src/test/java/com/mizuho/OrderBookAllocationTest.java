@@ -0,0 +1,81 @@
+package com.mizuho;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Counts the bytes the test thread allocates while trading against a book with pooling enabled.
+// Once the pools have filled, adds, cancels, modifies and fills at existing price levels must
+// allocate nothing.
+class OrderBookAllocationTest {
+    static final char OFFER = 'O';
+    static final char BID = 'B';
+
+    private static final int LEVELS = 5;
+    private static final int ORDERS_PER_LEVEL = 20;
+    private static final int ITERATIONS = 20_000;
+
+    private final long[] resting = new long[LEVELS * ORDERS_PER_LEVEL]; // a ring per level, oldest first
+    private final int[] oldest = new int[LEVELS];
+    private long nextId = 1;
+
+    @Test
+    public void testSteadyStateTradingAllocatesNothing() throws Exception {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        OrderBook orderBook = new OrderBook();
+        orderBook.enablePooling(1000, 10);
+        for (int level = 0; level < LEVELS; level++) {
+            for (int i = 0; i < ORDERS_PER_LEVEL; i++) {
+                resting[level * ORDERS_PER_LEVEL + i] = nextId;
+                orderBook.addOrder(nextId++, priceOf(level), BID, 100, 0);
+            }
+        }
+
+        // Fills the pools, lets the index stripes reach their working sizes and gets the code compiled
+        trade(orderBook, 5 * ITERATIONS);
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        long calibration = threads.getCurrentThreadAllocatedBytes() - before; // the cost of asking
+        before = threads.getCurrentThreadAllocatedBytes();
+        trade(orderBook, ITERATIONS);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before - calibration;
+
+        assertThat(allocated, equalTo(0L));
+        assertThat(orderBook.getOrdersForSide(BID).size(), equalTo(LEVELS * ORDERS_PER_LEVEL));
+    }
+
+    // Each iteration fills the oldest order at the best bid in full with an incoming offer and
+    // replaces it, cancels and replaces the oldest order at another level, and modifies an order
+    // below the best bid (so the orders there are all the size the incoming offer fills exactly).
+    // Every level keeps ORDERS_PER_LEVEL orders throughout, so no level is created or removed.
+    private void trade(OrderBook orderBook, int iterations) throws Exception {
+        for (int n = 0; n < iterations; n++) {
+            orderBook.addOrder(nextId++, priceOf(0), OFFER, 100, 0);
+            replaceOldest(orderBook, 0);
+
+            int level = 1 + n % (LEVELS - 1);
+            orderBook.removeOrder(resting[level * ORDERS_PER_LEVEL + oldest[level]]);
+            replaceOldest(orderBook, level);
+
+            orderBook.modifyOrderSize(resting[ORDERS_PER_LEVEL + (n * 7) % (resting.length - ORDERS_PER_LEVEL)], 50 + n % 100);
+        }
+    }
+
+    private void replaceOldest(OrderBook orderBook, int level) throws Exception {
+        int i = level * ORDERS_PER_LEVEL + oldest[level];
+        resting[i] = nextId;
+        orderBook.addOrder(nextId++, priceOf(level), BID, 100, 0);
+        oldest[level] = (oldest[level] + 1) % ORDERS_PER_LEVEL;
+    }
+
+    private static double priceOf(int level) {
+        return 100.0 - level;
+    }
+}
@@ -0,0 +1,78 @@
+package com.mizuho;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderBookManagerTest {
+    static final char OFFER = 'O';
+    static final char BID = 'B';
+
+    @Test
+    public void testOrdersRoutedToTheirInstrumentsBook() {
+        try (OrderBookManager manager = new OrderBookManager(2)) {
+            manager.addInstrument("GB0000000001", 0.01);
+            manager.addInstrument("GB0000000002", 0.5);
+            manager.addInstrument("GB0000000003", 0.01);
+
+            // The same order ids can be used in different books
+            manager.addOrder("GB0000000001", new Order(1, 96.0, BID, 100L));
+            manager.addOrder("GB0000000002", new Order(1, 96.5, BID, 200L));
+            manager.addOrder("GB0000000003", new Order(1, 97.0, OFFER, 300L));
+            manager.modifyOrderSize("GB0000000001", 1, 150L);
+            CompletableFuture<Void> last = manager.addOrder("GB0000000002", new Order(2, 96.5, BID, 200L));
+
+            manager.removeOrder("GB0000000003", 1).get();
+            last.get();
+            assertThat(manager.getOrderBook("GB0000000001").getSizeForSideAndLevel(BID, 1), equalTo(150L));
+            assertThat(manager.getOrderBook("GB0000000002").getSizeForSideAndLevel(BID, 1), equalTo(400L));
+            assertThat(manager.getOrderBook("GB0000000003").getOrdersForSide(OFFER).size(), equalTo(0));
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+
+    @Test
+    public void testReplaceAndTasksRoutedToTheirInstrumentsBook() throws Exception {
+        try (OrderBookManager manager = new OrderBookManager(2)) {
+            manager.addInstrument("GB0000000001", 0.01);
+            manager.addInstrument("GB0000000002", 0.01);
+            manager.addOrder("GB0000000001", new Order(1, 96.0, BID, 100L));
+            manager.addOrder("GB0000000002", new Order(1, 96.0, BID, 100L, 7));
+
+            manager.replaceOrder("GB0000000001", 1, 95.0, 200L);
+            manager.execute("GB0000000002", book -> book.cancelOrdersForOwner(7)).get();
+            manager.execute("GB0000000001", book -> {}).get(); // after the replace
+
+            assertThat(manager.getOrderBook("GB0000000001").getPriceForSideAndLevel(BID, 1), equalTo(95.0));
+            assertThat(manager.getOrderBook("GB0000000001").getSizeForSideAndLevel(BID, 1), equalTo(200L));
+            assertThat(manager.getOrderBook("GB0000000002").getOrdersForSide(BID).size(), equalTo(0));
+            assertThrows(Exception.class, () -> manager.execute("XX", book -> {}));
+        }
+    }
+
+    @Test
+    public void testUnknownInstrument() {
+        try (OrderBookManager manager = new OrderBookManager(1)) {
+            Exception exception = assertThrows(Exception.class, () -> manager.addOrder("XX", new Order(1, 96.0, BID, 100L)));
+            assertThat(exception.getMessage(), equalTo("Unknown instrument: XX"));
+        }
+    }
+
+    @Test
+    public void testAddSameInstrumentTwice() {
+        try (OrderBookManager manager = new OrderBookManager(1)) {
+            manager.addInstrument("GB0000000001", 0.01);
+            Exception exception = assertThrows(Exception.class, () -> manager.addInstrument("GB0000000001", 0.01));
+            assertThat(exception.getMessage(), equalTo("OrderBookManager already contains instrument: GB0000000001"));
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+}
@@ -2,7 +2,13 @@ package com.mizuho;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -84,6 +90,32 @@ class OrderBookTest {
         assertThat(actualMessage, equalTo("Unknown side: X"));
     }
 
+    @Test
+    public void testPriceNotOnTick() {
+        OrderBook orderBook = new OrderBook(0.25);
+
+        Exception exception = assertThrows(Exception.class, () -> orderBook.addOrder(new Order(1, 96.1, BID, 100)));
+
+        String actualMessage = exception.getMessage();
+        assertThat(actualMessage, equalTo("Price 96.1 is not a multiple of the tick size 0.25"));
+    }
+
+    @Test
+    public void testPricesOnSameTickShareLevel() {
+        try {
+            OrderBook orderBook = new OrderBook(0.1);
+            orderBook.addOrder(new Order(1, 0.1 + 0.2, OFFER, 100L)); // 0.30000000000000004
+            orderBook.addOrder(new Order(2, 0.3, OFFER, 200L));
+
+            assertThat(orderBook.getPriceForSideAndLevel(OFFER, 1), equalTo(0.3));
+            assertThat(orderBook.getSizeForSideAndLevel(OFFER, 1), equalTo(300L));
+            assertThrows(Exception.class, () -> orderBook.getPriceForSideAndLevel(OFFER, 2));
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+
     @Test
     public void testRemoveOrder() {
         try {
@@ -104,6 +136,28 @@ class OrderBookTest {
         }
     }
 
+    @Test
+    public void testRemoveOrderFromMiddleOfLevel() {
+        try {
+            OrderBook orderBook = new OrderBook();
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 96.0, BID, 200L));
+            orderBook.addOrder(new Order(3, 96.0, BID, 300L));
+
+            orderBook.removeOrder(2);
+            orderBook.addOrder(new Order(4, 96.0, BID, 400L));
+
+            List<Order> ordersForSide = orderBook.getOrdersForSide(BID);
+            assertThat(ordersForSide.size(), equalTo(3));
+            assertThat(ordersForSide.get(0).getId(), equalTo(1L));
+            assertThat(ordersForSide.get(1).getId(), equalTo(3L));
+            assertThat(ordersForSide.get(2).getId(), equalTo(4L));
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+
     @Test
     public void testGetPriceForSideAndLevel(){
         try {
@@ -120,6 +174,30 @@ class OrderBookTest {
         }
     }
 
+    @Test
+    public void testGetPriceForSideAndLevelAfterLevelRemoved() {
+        try {
+            OrderBook orderBook = new OrderBook();
+            orderBook.addOrder(new Order(1, 101.0, OFFER, 100L));
+            orderBook.addOrder(new Order(2, 99.0, OFFER, 100L));
+            orderBook.addOrder(new Order(3, 100.0, OFFER, 300L));
+
+            orderBook.removeOrder(2);
+            assertThat(orderBook.getPriceForSideAndLevel(OFFER, 1), equalTo(100.0));
+            assertThat(orderBook.getPriceForSideAndLevel(OFFER, 2), equalTo(101.0));
+
+            Exception exception = assertThrows(Exception.class, () -> orderBook.getPriceForSideAndLevel(OFFER, 3));
+            assertThat(exception.getMessage(), equalTo("Level 3 does not exist"));
+
+            // The emptied level can be used again
+            orderBook.addOrder(new Order(4, 99.0, OFFER, 100L));
+            assertThat(orderBook.getPriceForSideAndLevel(OFFER, 1), equalTo(99.0));
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+
     @Test
     public void testGetSizeForSideAndLevel() {
         try {
@@ -137,6 +215,26 @@ class OrderBookTest {
     }
 
 
+    @Test
+    public void testGetSizeForSideAndLevelAfterRemove() {
+        try {
+            OrderBook orderBook = new OrderBook();
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 96.0, BID, 200L));
+            orderBook.addOrder(new Order(3, 96.0, BID, 300L));
+
+            orderBook.removeOrder(2);
+            assertThat(orderBook.getSizeForSideAndLevel(BID, 1), equalTo(400L));
+
+            orderBook.modifyOrderSize(1, 50L);
+            assertThat(orderBook.getSizeForSideAndLevel(BID, 1), equalTo(350L));
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+
+
     @Test
     public void testModifyOrderSize() {
         try {
@@ -180,4 +278,542 @@ class OrderBookTest {
             assert(false);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCrossingBidMatchesInPriceTimePriority() {
+        try {
+            OrderBook orderBook = new OrderBook();
+            List<Trade> trades = new ArrayList<>();
+            orderBook.addTradeListener(trade -> trades.add(trade.copy()));
+
+            orderBook.addOrder(new Order(1, 101.0, OFFER, 100L));
+            orderBook.addOrder(new Order(2, 100.0, OFFER, 100L));
+            orderBook.addOrder(new Order(3, 100.0, OFFER, 100L));
+            orderBook.addOrder(new Order(4, 99.0, BID, 100L));
+
+            orderBook.addOrder(new Order(5, 101.0, BID, 250L));
+
+            assertThat(trades.size(), equalTo(3));
+            assertThat(trades.get(0).getPassiveOrderId(), equalTo(2L));
+            assertThat(trades.get(0).getPrice(), equalTo(100.0));
+            assertThat(trades.get(1).getPassiveOrderId(), equalTo(3L));
+            assertThat(trades.get(2).getPassiveOrderId(), equalTo(1L));
+            assertThat(trades.get(2).getPrice(), equalTo(101.0));
+            assertThat(trades.get(2).getSize(), equalTo(50L));
+            assertThat(trades.get(2).getAggressorOrderId(), equalTo(5L));
+            assertThat(trades.get(2).getAggressorSide(), equalTo(BID));
+
+            // Order 1 keeps the rest of its size, and the fully filled aggressor does not rest
+            List<Order> offers = orderBook.getOrdersForSide(OFFER);
+            assertThat(offers.size(), equalTo(1));
+            assertThat(offers.get(0).getSize(), equalTo(50L));
+            assertThat(orderBook.getPriceForSideAndLevel(BID, 1), equalTo(99.0));
+            assertThat(orderBook.getOrdersForSide(BID).size(), equalTo(1));
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+
+    @Test
+    public void testUnfilledRemainderRests() {
+        try {
+            OrderBook orderBook = new OrderBook();
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 95.0, BID, 100L));
+
+            orderBook.addOrder(new Order(3, 96.0, OFFER, 300L));
+
+            assertThat(orderBook.getPriceForSideAndLevel(BID, 1), equalTo(95.0));
+            assertThat(orderBook.getPriceForSideAndLevel(OFFER, 1), equalTo(96.0));
+            assertThat(orderBook.getSizeForSideAndLevel(OFFER, 1), equalTo(200L));
+
+            // The filled order has gone from the book
+            orderBook.modifyOrderSize(3, 150L);
+            assertThrows(Exception.class, () -> orderBook.modifyOrderSize(1, 50L));
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+
+    @Test
+    public void testForEachOrderVisitsInPriceTimePriority() {
+        try {
+            OrderBook orderBook = new OrderBook();
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 99.0, BID, 200L));
+            orderBook.addOrder(new Order(3, 96.0, BID, 300L));
+
+            StringBuilder visited = new StringBuilder();
+            orderBook.forEachOrder(BID, (id, price, side, size) ->
+                    visited.append(id).append(side).append(price).append('x').append(size).append(' '));
+            assertThat(visited.toString(), equalTo("2B99.0x200 1B96.0x100 3B96.0x300 "));
+
+            orderBook.forEachOrder(OFFER, (id, price, side, size) -> fail("The offer side is empty"));
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+
+    @Test
+    public void testLevelUpdatesKeepACopyOfTheDepth() {
+        try {
+            OrderBook orderBook = new OrderBook();
+            TreeMap<Double, Long> bids = new TreeMap<>(Comparator.reverseOrder());
+            TreeMap<Double, Long> offers = new TreeMap<>();
+            orderBook.addLevelListener((action, side, price, size, orderCount) -> {
+                TreeMap<Double, Long> depth = side == BID ? bids : offers;
+                switch (action) {
+                    case NEW:
+                        assertNull(depth.put(price, size));
+                        break;
+                    case CHANGE:
+                        assertNotNull(depth.put(price, size));
+                        break;
+                    case DELETE:
+                        assertNotNull(depth.remove(price));
+                        assertThat(size, equalTo(0L));
+                        break;
+                }
+            });
+
+            // Random adds (some crossing), cancels and modifies around a price of 100
+            Random random = new Random(7);
+            List<Long> ids = new ArrayList<>();
+            for (long id = 1; id <= 2000; id++) {
+                int op = random.nextInt(4);
+                if ( op < 2 || ids.isEmpty() ) {
+                    char side = random.nextBoolean() ? BID : OFFER;
+                    double price = side == BID ? 95 + random.nextInt(7) : 99 + random.nextInt(7);
+                    orderBook.addOrder(new Order(id, price, side, 1 + random.nextInt(100)));
+                    ids.add(id);
+                }
+                else {
+                    int i = random.nextInt(ids.size());
+                    if ( op == 2 ) {
+                        orderBook.removeOrder(ids.remove(i)); // may already have been filled
+                    }
+                    else {
+                        try {
+                            orderBook.modifyOrderSize(ids.get(i), 1 + random.nextInt(100));
+                        }
+                        catch (Exception e) {
+                            ids.remove(i); // filled
+                        }
+                    }
+                }
+                assertSameDepth(orderBook, BID, bids);
+                assertSameDepth(orderBook, OFFER, offers);
+            }
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+
+    @Test
+    public void testOrderEventsForEveryChange() {
+        try {
+            OrderBook orderBook = new OrderBook();
+            List<String> events = new ArrayList<>();
+            orderBook.addOrderEventListener((batch, count) -> {
+                for (int i = 0; i < count; i++)
+                    events.add(batch[i].getType() + " " + batch[i].getOrderId() + " " + batch[i].getSide() + batch[i].getPrice() +
+                            " x" + batch[i].getSize() + " exec" + batch[i].getExecutedSize() + " @" + batch[i].getQueuePosition());
+            });
+
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 96.0, BID, 200L));
+            orderBook.addOrder(new Order(3, 96.0, BID, 300L));
+            orderBook.modifyOrderSize(3, 250L);
+            orderBook.removeOrder(2);
+            orderBook.addOrder(new Order(4, 96.0, OFFER, 150L));
+            assertTrue(events.isEmpty()); // still batched
+
+            orderBook.flushEvents();
+            assertThat(events, equalTo(List.of(
+                    "ADD 1 B96.0 x100 exec0 @0",
+                    "ADD 2 B96.0 x200 exec0 @1",
+                    "ADD 3 B96.0 x300 exec0 @2",
+                    "MODIFY 3 B96.0 x250 exec0 @2",
+                    "CANCEL 2 B96.0 x200 exec0 @1",
+                    "EXECUTE 1 B96.0 x0 exec100 @0",
+                    "EXECUTE 3 B96.0 x200 exec50 @0")));
+
+            // With a batch size of 1 each event is delivered straight away
+            orderBook.setOrderEventBatchSize(1);
+            orderBook.modifyOrderSize(3, 0L);
+            assertThat(events.get(events.size() - 1), equalTo("CANCEL 3 B96.0 x200 exec0 @0"));
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+
+    @Test
+    public void testConcurrentModifiesAndCancels() throws Exception {
+        // Modifiers and a canceller race on the same orders; the level totals must still add up
+        OrderBook orderBook = new OrderBook();
+        int orders = 1000;
+        for (int i = 0; i < orders; i++)
+            orderBook.addOrder(new Order(i, 90.0 + i % 10, BID, 100L));
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int n = 0; n < 20_000; n++) {
+                    long id = random.nextInt(orders);
+                    try {
+                        if ( seed == 0 && n % 20 == 0 )
+                            orderBook.removeOrder(id);
+                        else
+                            orderBook.modifyOrderSize(id, 1 + random.nextInt(500));
+                    }
+                    catch (Exception e) {
+                        // already cancelled
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        for (int level = 1; level <= 10; level++) {
+            double price = orderBook.getPriceForSideAndLevel(BID, level);
+            long[] total = new long[1];
+            orderBook.forEachOrder(BID, (id, p, side, size) -> {
+                if ( p == price )
+                    total[0] += size;
+            });
+            assertThat(orderBook.getSizeForSideAndLevel(BID, level), equalTo(total[0]));
+        }
+    }
+
+    @Test
+    public void testConcurrentAddsOfTheSameIdRestOnce() throws Exception {
+        OrderBook orderBook = new OrderBook();
+        // Holding the match lock a little longer gives the other threads time to pile up behind it
+        orderBook.addLevelListener((action, side, price, size, orderCount) -> Thread.yield());
+        int orders = 2000;
+        AtomicInteger added = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            double price = 90.0 + t; // a different level each, so only the id check can stop them
+            threads[t] = new Thread(() -> {
+                for (int id = 0; id < orders; id++) {
+                    try {
+                        orderBook.addOrder(new Order(id, price, BID, 100L));
+                        added.incrementAndGet();
+                    }
+                    catch (Exception e) {
+                        // another thread added it first
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertThat(added.get(), equalTo(orders));
+        assertThat(orderBook.getOrdersForSide(BID).size(), equalTo(orders));
+    }
+
+    @Test
+    public void testSizeIncreaseLosesPriority() {
+        try {
+            OrderBook orderBook = new OrderBook();
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(3, 96.0, BID, 100L));
+
+            // By default an order keeps its place either way
+            orderBook.modifyOrderSize(1, 200L);
+            assertThat(orderBook.getOrdersForSide(BID).get(0).getId(), equalTo(1L));
+
+            orderBook.setRequeueOnSizeIncrease(true);
+            orderBook.modifyOrderSize(2, 50L); // a decrease keeps its place
+            orderBook.modifyOrderSize(1, 300L); // an increase goes to the back
+
+            List<Order> bids = orderBook.getOrdersForSide(BID);
+            assertThat(bids.get(0).getId(), equalTo(2L));
+            assertThat(bids.get(1).getId(), equalTo(3L));
+            assertThat(bids.get(2).getId(), equalTo(1L));
+            assertThat(orderBook.getSizeForSideAndLevel(BID, 1), equalTo(450L));
+
+            // And so is filled last
+            orderBook.addOrder(new Order(4, 96.0, OFFER, 150L));
+            bids = orderBook.getOrdersForSide(BID);
+            assertThat(bids.size(), equalTo(1));
+            assertThat(bids.get(0).getId(), equalTo(1L));
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+
+    @Test
+    public void testReplaceOrderMovesPrice() {
+        try {
+            OrderBook orderBook = new OrderBook();
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 97.0, BID, 200L));
+            orderBook.addOrder(new Order(3, 99.0, OFFER, 300L));
+
+            // To the back of an existing level
+            orderBook.replaceOrder(1, 97.0, 150L);
+            assertThat(orderBook.getSizeForSideAndLevel(BID, 1), equalTo(350L));
+            assertThrows(Exception.class, () -> orderBook.getPriceForSideAndLevel(BID, 2));
+            List<Order> bids = orderBook.getOrdersForSide(BID);
+            assertThat(bids.get(0).getId(), equalTo(2L));
+            assertThat(bids.get(1).getId(), equalTo(1L));
+
+            // To a new level
+            orderBook.replaceOrder(2, 95.0, 200L);
+            assertThat(orderBook.getPriceForSideAndLevel(BID, 2), equalTo(95.0));
+
+            // Across the spread, where it matches like a new order
+            orderBook.replaceOrder(1, 99.0, 400L);
+            assertThrows(Exception.class, () -> orderBook.getPriceForSideAndLevel(OFFER, 1));
+            assertThat(orderBook.getPriceForSideAndLevel(BID, 1), equalTo(99.0));
+            assertThat(orderBook.getSizeForSideAndLevel(BID, 1), equalTo(100L));
+
+            // The id still works for cancels
+            orderBook.removeOrder(1);
+            assertThat(orderBook.getPriceForSideAndLevel(BID, 1), equalTo(95.0));
+
+            Exception exception = assertThrows(Exception.class, () -> orderBook.replaceOrder(7, 95.0, 100L));
+            assertThat(exception.getMessage(), equalTo("Could not find order with id: 7"));
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+
+    @Test
+    public void testConcurrentReplacesAndCancels() throws Exception {
+        // Replaces move orders between levels while another thread cancels them; every cancel must
+        // take effect whichever level the order is on at the time
+        OrderBook orderBook = new OrderBook();
+        int orders = 2000;
+        for (int i = 0; i < orders; i++)
+            orderBook.addOrder(new Order(i, 90.0 + i % 5, BID, 100L));
+
+        Thread replacer = new Thread(() -> {
+            Random random = new Random(1);
+            for (int n = 0; n < 50_000; n++) {
+                try {
+                    orderBook.replaceOrder(random.nextInt(orders), 90.0 + random.nextInt(5), 100L);
+                }
+                catch (Exception e) {
+                    // already cancelled
+                }
+            }
+        });
+        replacer.start();
+        for (int i = 0; i < orders; i += 2)
+            orderBook.removeOrder(i);
+        replacer.join();
+
+        List<Order> bids = orderBook.getOrdersForSide(BID);
+        assertThat(bids.size(), equalTo(orders / 2));
+        for (Order order : bids)
+            assertThat(order.getId() % 2, equalTo(1L));
+    }
+
+    @Test
+    public void testConcurrentUpdatesWithPooling() throws Exception {
+        // Recycled orders and levels must never let a stale cancel or modify touch another order:
+        // one thread replaces orders, one adds and cancels its own orders at prices that keep
+        // emptying (so levels are recycled), while this one cancels and modifies
+        OrderBook orderBook = new OrderBook();
+        orderBook.enablePooling(100, 4);
+        int orders = 2000;
+        for (int i = 0; i < orders; i++)
+            orderBook.addOrder(new Order(i, 90.0 + i % 5, BID, 100L));
+
+        Thread replacer = new Thread(() -> {
+            Random random = new Random(1);
+            for (int n = 0; n < 50_000; n++) {
+                try {
+                    orderBook.replaceOrder(random.nextInt(orders), 90.0 + random.nextInt(5), 100L);
+                }
+                catch (Exception e) {
+                    // already cancelled
+                }
+            }
+        });
+        Thread churner = new Thread(() -> {
+            try {
+                for (long id = orders; id < orders + 50_000; id++) {
+                    orderBook.addOrder(new Order(id, 80.0 + id % 7, BID, 10L));
+                    orderBook.removeOrder(id);
+                }
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        replacer.start();
+        churner.start();
+        for (int i = 0; i < orders; i += 2) {
+            orderBook.modifyOrderSize(i + 1, 50L);
+            orderBook.removeOrder(i);
+        }
+        replacer.join();
+        churner.join();
+
+        List<Order> bids = orderBook.getOrdersForSide(BID);
+        assertThat(bids.size(), equalTo(orders / 2));
+        long total = 0;
+        for (Order order : bids) {
+            assertThat(order.getId() % 2, equalTo(1L));
+            assertTrue(order.getPrice() >= 90.0);
+            total += order.getSize();
+        }
+        long levelTotal = 0;
+        for (int level = 1; level <= 5; level++)
+            levelTotal += orderBook.getSizeForSideAndLevel(BID, level);
+        assertThat(levelTotal, equalTo(total));
+        assertThrows(Exception.class, () -> orderBook.getPriceForSideAndLevel(BID, 6));
+    }
+
+    @Test
+    public void testMassCancels() throws Exception {
+        OrderBook orderBook = new OrderBook();
+        List<String> levels = new ArrayList<>();
+        orderBook.addLevelListener((action, side, price, size, orderCount) -> levels.add(action + " " + side + price + " x" + size));
+        List<String> events = new ArrayList<>();
+        int[] batches = new int[1];
+        orderBook.addOrderEventListener((batch, count) -> {
+            batches[0]++;
+            for (int i = 0; i < count; i++)
+                events.add(batch[i].getType() + " " + batch[i].getOrderId() + " @" + batch[i].getQueuePosition());
+        });
+
+        orderBook.addOrder(new Order(1, 96.0, BID, 100L, 7));
+        orderBook.addOrder(new Order(2, 96.0, BID, 100L, 8));
+        orderBook.addOrder(new Order(3, 96.0, BID, 100L, 7));
+        orderBook.addOrder(new Order(4, 95.0, BID, 100L, 7));
+        orderBook.addOrder(new Order(5, 94.0, BID, 100L, 8));
+        orderBook.addOrder(new Order(6, 101.0, OFFER, 100L, 7));
+        orderBook.addOrder(new Order(7, 102.0, OFFER, 100L));
+        orderBook.flushEvents();
+
+        // Owner 7's orders go from both sides, with one level update per level and one batch of events
+        levels.clear();
+        events.clear();
+        batches[0] = 0;
+        assertThat(orderBook.cancelOrdersForOwner(7), equalTo(4));
+        assertThat(levels, equalTo(List.of("CHANGE B96.0 x100", "DELETE B95.0 x0", "DELETE O101.0 x0")));
+        assertThat(events, equalTo(List.of("CANCEL 1 @0", "CANCEL 3 @1", "CANCEL 4 @0", "CANCEL 6 @0")));
+        assertThat(batches[0], equalTo(1));
+        assertThat(orderBook.getOrdersForSide(BID).size(), equalTo(2));
+        assertThat(orderBook.getPriceForSideAndLevel(OFFER, 1), equalTo(102.0));
+        assertThat(orderBook.cancelOrdersForOwner(7), equalTo(0));
+
+        // A price band, inclusive at both ends
+        orderBook.addOrder(new Order(8, 93.0, BID, 100L));
+        orderBook.addOrder(new Order(9, 92.0, BID, 100L));
+        assertThat(orderBook.cancelOrdersInRange(BID, 93.0, 94.0), equalTo(2));
+        List<Order> bids = orderBook.getOrdersForSide(BID);
+        assertThat(bids.size(), equalTo(2));
+        assertThat(bids.get(0).getId(), equalTo(2L));
+        assertThat(bids.get(1).getId(), equalTo(9L));
+        assertThrows(Exception.class, () -> orderBook.cancelOrdersInRange(BID, 94.0, 93.0));
+
+        // A whole side, leaving the other alone; cancelled ids can be used again
+        assertThat(orderBook.cancelAllOrders(BID), equalTo(2));
+        assertTrue(orderBook.getOrdersForSide(BID).isEmpty());
+        assertThat(orderBook.getOrdersForSide(OFFER).size(), equalTo(1));
+        orderBook.addOrder(new Order(2, 96.0, BID, 100L));
+        assertThat(orderBook.getSizeForSideAndLevel(BID, 1), equalTo(100L));
+    }
+
+    @Test
+    public void testApplyBatchMatchesOneAtATime() throws Exception {
+        // Some batches can be grouped by level (no adds that cross) and some cannot
+        Random random = new Random(11);
+        OrderBook batched = new OrderBook();
+        OrderBook oneAtATime = new OrderBook();
+
+        // A cancel or modify of an order that is only added later in the batch fails (or misses)
+        assertBatchMatches(batched, oneAtATime, new OrderCommand[] {
+                new OrderCommand().setCancel(5), new OrderCommand().setAdd(5, 95.0, BID, 100) });
+        assertBatchMatches(batched, oneAtATime, new OrderCommand[] {
+                new OrderCommand().setModify(6, 50), new OrderCommand().setAdd(6, 95.0, BID, 100) });
+        assertThat(batched.getOrdersForSide(BID).size(), equalTo(2));
+        assertThat(batched.getSizeForSideAndLevel(BID, 1), equalTo(200L));
+
+        long nextId = 7;
+        for (int batch = 0; batch < 200; batch++) {
+            boolean crossing = batch % 4 == 0;
+            OrderCommand[] commands = new OrderCommand[1 + random.nextInt(50)];
+            for (int i = 0; i < commands.length; i++) {
+                int op = random.nextInt(5);
+                long id = 1 + random.nextInt((int)nextId);
+                if ( op < 3 ) {
+                    char side = random.nextBoolean() ? BID : OFFER;
+                    double price = side == BID ? (crossing ? 100 : 95) + random.nextInt(5) : (crossing ? 96 : 100) + random.nextInt(5);
+                    commands[i] = new OrderCommand().setAdd(op == 0 && i > 0 ? id : nextId++, price, side, 1 + random.nextInt(100));
+                }
+                else if ( op == 3 ) {
+                    commands[i] = new OrderCommand().setCancel(id);
+                }
+                else {
+                    commands[i] = new OrderCommand().setModify(id, random.nextInt(100));
+                }
+            }
+
+            assertBatchMatches(batched, oneAtATime, commands);
+        }
+    }
+
+    private static void assertBatchMatches(OrderBook batched, OrderBook oneAtATime, OrderCommand[] commands) throws Exception {
+        List<String> batchedResults = new ArrayList<>();
+        int succeeded = batched.applyBatch(commands, commands.length,
+                (id, error) -> batchedResults.add(id + ":" + (error == null ? "ok" : error.getMessage())));
+
+        List<String> oneAtATimeResults = new ArrayList<>();
+        int expectedSucceeded = 0;
+        for (OrderCommand command : commands) {
+            try {
+                command.applyTo(oneAtATime);
+                oneAtATimeResults.add(command.getId() + ":ok");
+                expectedSucceeded++;
+            }
+            catch (Exception e) {
+                oneAtATimeResults.add(command.getId() + ":" + e.getMessage());
+            }
+        }
+
+        assertThat(batchedResults, equalTo(oneAtATimeResults));
+        assertThat(succeeded, equalTo(expectedSucceeded));
+        for (char side : new char[] {BID, OFFER}) {
+            List<Order> expected = oneAtATime.getOrdersForSide(side);
+            List<Order> actual = batched.getOrdersForSide(side);
+            assertThat(actual.size(), equalTo(expected.size()));
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat(actual.get(i).getId(), equalTo(expected.get(i).getId()));
+                assertThat(actual.get(i).getPrice(), equalTo(expected.get(i).getPrice()));
+                assertThat(actual.get(i).getSize(), equalTo(expected.get(i).getSize()));
+            }
+        }
+    }
+
+    private static void assertSameDepth(OrderBook orderBook, char side, TreeMap<Double, Long> depth) throws Exception {
+        int level = 1;
+        for (Map.Entry<Double, Long> entry : depth.entrySet()) {
+            assertThat(orderBook.getPriceForSideAndLevel(side, level), equalTo(entry.getKey()));
+            assertThat(orderBook.getSizeForSideAndLevel(side, level), equalTo(entry.getValue()));
+            level++;
+        }
+        int deepest = level;
+        assertThrows(Exception.class, () -> orderBook.getPriceForSideAndLevel(side, deepest));
+    }
+}
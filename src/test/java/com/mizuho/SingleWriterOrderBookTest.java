@@ -0,0 +1,121 @@
+package com.mizuho;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleWriterOrderBookTest {
+    static final char OFFER = 'O';
+    static final char BID = 'B';
+
+    @Test
+    public void testCommandsAppliedInOrder() {
+        try (SingleWriterOrderBook orderBook = new SingleWriterOrderBook(new OrderBook())) {
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 99.0, BID, 100L));
+            orderBook.addOrder(new Order(3, 96.0, BID, 300L));
+            orderBook.modifyOrderSize(3, 500L);
+            orderBook.removeOrder(2).get();
+
+            assertThat(orderBook.getPriceForSideAndLevel(BID, 1), equalTo(96.0));
+            assertThat(orderBook.getSizeForSideAndLevel(BID, 1), equalTo(600L));
+        }
+        catch(Exception e) {
+            assert(false);
+        }
+    }
+
+    @Test
+    public void testFailureReportedThroughFuture() {
+        try (SingleWriterOrderBook orderBook = new SingleWriterOrderBook(new OrderBook())) {
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            CompletableFuture<Void> duplicate = orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+
+            ExecutionException exception = assertThrows(ExecutionException.class, duplicate::get);
+            assertThat(exception.getCause().getMessage(), equalTo("OrderBook already contains order with id: 1"));
+        }
+    }
+
+    @Test
+    public void testReplaceAndTasksRunOnTheWriter() throws Exception {
+        try (SingleWriterOrderBook orderBook = new SingleWriterOrderBook(new OrderBook())) {
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 95.0, BID, 100L));
+            orderBook.replaceOrder(1, 97.0, 50L);
+            AtomicInteger cancelled = new AtomicInteger();
+            orderBook.execute(book -> cancelled.set(book.cancelOrdersInRange(BID, 95.0, 95.0))).get();
+
+            assertThat(cancelled.get(), equalTo(1));
+            assertThat(orderBook.getPriceForSideAndLevel(BID, 1), equalTo(97.0));
+            assertThat(orderBook.getSizeForSideAndLevel(BID, 1), equalTo(50L));
+            assertThat(orderBook.getOrdersForSide(BID).size(), equalTo(1));
+
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> orderBook.replaceOrder(3, 97.0, 50L).get());
+            assertThat(exception.getCause().getMessage(), equalTo("Could not find order with id: 3"));
+        }
+    }
+
+    @Test
+    public void testCallbacksFromManyProducers() throws Exception {
+        // A small ring so that producers have to wait for the consumer
+        OrderBookEventLoop eventLoop = new OrderBookEventLoop("test-writer", 64, Thread::new);
+        AtomicInteger completed = new AtomicInteger();
+        AtomicReference<Exception> firstError = new AtomicReference<>();
+        CommandCallback callback = (id, error) -> {
+            if ( error != null )
+                firstError.compareAndSet(null, error);
+            completed.incrementAndGet();
+        };
+
+        try (SingleWriterOrderBook orderBook = new SingleWriterOrderBook(new OrderBook(), eventLoop)) {
+            Thread[] producers = new Thread[4];
+            for (int t = 0; t < producers.length; t++) {
+                final int base = t * 10_000;
+                final char side = t % 2 == 0 ? BID : OFFER;
+                final double price = t % 2 == 0 ? 99.0 - t : 101.0 + t;
+                producers[t] = new Thread(() -> {
+                    for (int id = base + 1; id <= base + 1000; id++)
+                        orderBook.addOrder(new Order(id, price, side, 10L), callback);
+                });
+                producers[t].start();
+            }
+            for (Thread producer : producers)
+                producer.join();
+
+            orderBook.removeOrder(1).get(); // everything published before this has been applied
+
+            assertNull(firstError.get());
+            assertThat(completed.get(), equalTo(4000));
+            List<Order> bids = orderBook.getOrdersForSide(BID);
+            assertThat(bids.size(), equalTo(1999));
+            assertThat(orderBook.getSizeForSideAndLevel(OFFER, 1), equalTo(10_000L));
+        }
+    }
+
+    @Test
+    public void testEventLoopFlushesOrderEvents() throws Exception {
+        OrderBook book = new OrderBook();
+        AtomicInteger events = new AtomicInteger();
+        book.addOrderEventListener((batch, count) -> events.addAndGet(count));
+
+        try (SingleWriterOrderBook orderBook = new SingleWriterOrderBook(book)) {
+            orderBook.addOrder(new Order(1, 96.0, BID, 100L));
+            orderBook.addOrder(new Order(2, 96.0, OFFER, 40L));
+            orderBook.modifyOrderSize(1, 50L).get();
+
+            // Flushed by the writer once it has run out of commands, without a call to flushEvents()
+            long deadline = System.currentTimeMillis() + 5_000;
+            while ( events.get() < 3 && System.currentTimeMillis() < deadline )
+                Thread.sleep(1);
+            assertThat(events.get(), equalTo(3));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.mizuho;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class WireCodecTest {
+    static final char OFFER = 'O';
+    static final char BID = 'B';
+
+    @Test
+    public void testCommandsRoundTripAndApply() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024).order(ByteOrder.LITTLE_ENDIAN);
+        MessageHeader header = new MessageHeader();
+        AddOrderMessage add = new AddOrderMessage();
+        CancelOrderMessage cancel = new CancelOrderMessage();
+        ModifyOrderMessage modify = new ModifyOrderMessage();
+
+        // Three adds, a modify and a cancel back to back, as a gateway would receive them
+        int at = 0;
+        add.wrapAndApplyHeader(buffer, at, header).id(1).priceTicks(9600).size(100).owner(7).side(BID);
+        at += MessageHeader.ENCODED_LENGTH + AddOrderMessage.BLOCK_LENGTH;
+        add.wrapAndApplyHeader(buffer, at, header).id(2).priceTicks(9900).size(200).owner(0).side(BID);
+        at += MessageHeader.ENCODED_LENGTH + AddOrderMessage.BLOCK_LENGTH;
+        add.wrapAndApplyHeader(buffer, at, header).id(3).priceTicks(10100).size(50).owner(7).side(OFFER);
+        at += MessageHeader.ENCODED_LENGTH + AddOrderMessage.BLOCK_LENGTH;
+        modify.wrapAndApplyHeader(buffer, at, header).id(2).size(150);
+        at += MessageHeader.ENCODED_LENGTH + ModifyOrderMessage.BLOCK_LENGTH;
+        cancel.wrapAndApplyHeader(buffer, at, header).id(1);
+        at += MessageHeader.ENCODED_LENGTH + CancelOrderMessage.BLOCK_LENGTH;
+
+        // Read back through fresh flyweights
+        header.wrap(buffer, 0);
+        assertThat(header.templateId(), equalTo(AddOrderMessage.TEMPLATE_ID));
+        assertThat(header.blockLength(), equalTo(AddOrderMessage.BLOCK_LENGTH));
+        assertThat(header.schemaId(), equalTo(MessageHeader.SCHEMA_ID));
+        assertThat(header.version(), equalTo(MessageHeader.SCHEMA_VERSION));
+        AddOrderMessage decoded = new AddOrderMessage().wrap(buffer, MessageHeader.ENCODED_LENGTH);
+        assertThat(decoded.id(), equalTo(1L));
+        assertThat(decoded.priceTicks(), equalTo(9600L));
+        assertThat(decoded.size(), equalTo(100L));
+        assertThat(decoded.owner(), equalTo(7L));
+        assertThat(decoded.side(), equalTo(BID));
+
+        OrderBook orderBook = new OrderBook();
+        CommandDecoder decoder = new CommandDecoder();
+        int offset = 0;
+        int commands = 0;
+        for (int length; (length = decoder.apply(buffer, offset, orderBook)) != 0; offset += length)
+            commands++;
+        assertThat(commands, equalTo(5));
+        assertThat(offset, equalTo(at));
+
+        List<Order> bids = orderBook.getOrdersForSide(BID);
+        assertThat(bids.size(), equalTo(1));
+        assertThat(bids.get(0).getId(), equalTo(2L));
+        assertThat(bids.get(0).getSize(), equalTo(150L));
+        assertThat(orderBook.getPriceForSideAndLevel(BID, 1), equalTo(99.0));
+        assertThat(orderBook.getPriceForSideAndLevel(OFFER, 1), equalTo(101.0));
+        assertThat(orderBook.cancelOrdersForOwner(7), equalTo(1)); // the owner tag came through
+        assertEquals(0, orderBook.getOrdersForSide(OFFER).size());
+    }
+
+    @Test
+    public void testMarketDataRoundTrip() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        MessageHeader header = new MessageHeader();
+
+        OrderEvent event = new OrderEvent();
+        event.set(OrderEvent.Type.EXECUTE, 42, 99.5, OFFER, 60, 40, 3);
+        new OrderEventMessage().wrapAndApplyHeader(buffer, 0, header).set(event);
+        assertThat(header.wrap(buffer, 0).templateId(), equalTo(OrderEventMessage.TEMPLATE_ID));
+        OrderEventMessage eventMessage = new OrderEventMessage().wrap(buffer, MessageHeader.ENCODED_LENGTH);
+        assertThat(eventMessage.type(), equalTo(OrderEvent.Type.EXECUTE));
+        assertThat(eventMessage.orderId(), equalTo(42L));
+        assertThat(eventMessage.price(), equalTo(99.5));
+        assertThat(eventMessage.side(), equalTo(OFFER));
+        assertThat(eventMessage.size(), equalTo(60L));
+        assertThat(eventMessage.executedSize(), equalTo(40L));
+        assertThat(eventMessage.queuePosition(), equalTo(3));
+
+        Trade trade = new Trade();
+        trade.set(5, 6, BID, 101.25, 30);
+        new TradeMessage().wrapAndApplyHeader(buffer, 64, header).set(trade);
+        TradeMessage tradeMessage = new TradeMessage().wrap(buffer, 64 + MessageHeader.ENCODED_LENGTH);
+        assertThat(tradeMessage.aggressorOrderId(), equalTo(5L));
+        assertThat(tradeMessage.passiveOrderId(), equalTo(6L));
+        assertThat(tradeMessage.aggressorSide(), equalTo(BID));
+        assertThat(tradeMessage.price(), equalTo(101.25));
+        assertThat(tradeMessage.size(), equalTo(30L));
+
+        new LevelUpdateMessage().wrapAndApplyHeader(buffer, 128, header)
+                .action(LevelListener.Action.DELETE).side(BID).price(98.0).size(0).orderCount(0);
+        LevelUpdateMessage levelMessage = new LevelUpdateMessage().wrap(buffer, 128 + MessageHeader.ENCODED_LENGTH);
+        assertThat(levelMessage.action(), equalTo(LevelListener.Action.DELETE));
+        assertThat(levelMessage.side(), equalTo(BID));
+        assertThat(levelMessage.price(), equalTo(98.0));
+    }
+
+    @Test
+    public void testRejectsBigEndianAndStopsAtUnwritten() throws Exception {
+        ByteBuffer bigEndian = ByteBuffer.allocate(64);
+        assertThrows(IllegalArgumentException.class, () -> new AddOrderMessage().wrap(bigEndian, 0));
+
+        ByteBuffer buffer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(new CommandDecoder().apply(buffer, 0, new OrderBook()), equalTo(0));
+
+        new MessageHeader().wrap(buffer, 0).apply(8, 99);
+        assertThrows(Exception.class, () -> new CommandDecoder().apply(buffer, 0, new OrderBook()));
+    }
+}